@@ -0,0 +1,178 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Measures the throughput of the Scanner, and of the Parser with its
+ * Scanner, on source files or on a generated program of a given number of
+ * lines, in tokens per second. The Scanner is compared with BaselineScanner,
+ * the scanner it replaced, which must produce the same tokens. The source is
+ * read before timing, so the figures leave out the file system.
+ *
+ * The benchmark and its baseline live in the bench source folder, in the
+ * package of the classes they measure, and are not part of the compiler:
+ * javac -d bin -sourcepath src:bench bench/miniJava/SyntacticAnalyzer/*.java
+ *
+ * usage: java miniJava.SyntacticAnalyzer.Benchmark [runs] (file | -generate
+ * lines)*
+ */
+public class Benchmark {
+
+    interface Pass {
+        void run(String source) throws IOException;
+    }
+
+    /**
+     * Generates a program of about the given number of lines, in classes
+     * of a few hundred lines that use every kind of token
+     *
+     * @param lines
+     * @return
+     */
+    public static String generate(int lines) {
+        StringBuilder source = new StringBuilder();
+        int written = 0;
+        for (int k = 0; written < lines; k++) {
+            source.append("class C").append(k).append(" {\n");
+            source.append("    private int count").append(k).append(";\n");
+            source.append("    public int[] flags;\n");
+            written += 3;
+            for (int m = 0; m < 20 && written < lines; m++) {
+                source.append("    // method ").append(m).append(" of class ").append(k).append('\n');
+                source.append("    public int method").append(m).append("(int a, C").append(k).append(" other) {\n");
+                source.append("        int sum = 0;\n");
+                source.append("        /* loop over\n           the flags */\n");
+                source.append("        while (a >= 0 && !(sum == 1234567)) {\n");
+                source.append("            if (flags[a] == 1 || a != count").append(k).append(")\n");
+                source.append("                sum = sum + a * 2 - other.count").append(k).append(" / 3;\n");
+                source.append("            else\n");
+                source.append("                sum = -sum;\n");
+                source.append("            a = a - 1;\n");
+                source.append("        }\n");
+                source.append("        return this.method").append(m).append("(sum, new C").append(k)
+                        .append("());\n");
+                source.append("    }\n");
+                written += 14;
+            }
+            source.append("}\n");
+            written += 1;
+        }
+        return source.toString();
+    }
+
+    /**
+     * Scans source to the end
+     *
+     * @param source
+     * @return the number of tokens, not counting the end of the text
+     * @throws IOException
+     */
+    static int scan(String source) throws IOException {
+        Scanner scanner = new Scanner(new BufferedReader(new StringReader(source)));
+        int tokens = 0;
+        while (scanner.scan().type != Token.TYPE.EOT)
+            tokens++;
+        return tokens;
+    }
+
+    /**
+     * Scans source to the end with the BaselineScanner
+     *
+     * @param source
+     * @return the number of tokens, not counting the end of the text
+     * @throws IOException
+     */
+    static int scanBaseline(String source) throws IOException {
+        BaselineScanner scanner = new BaselineScanner(new BufferedReader(new StringReader(source)));
+        int tokens = 0;
+        while (scanner.scan().type != Token.TYPE.EOT)
+            tokens++;
+        return tokens;
+    }
+
+    /**
+     * @return false if the scanners differ on a token of source
+     */
+    static boolean sameTokens(String source) throws IOException {
+        Scanner scanner = new Scanner(new BufferedReader(new StringReader(source)));
+        BaselineScanner baseline = new BaselineScanner(new BufferedReader(new StringReader(source)));
+        Token token, expected;
+        do {
+            token = scanner.scan();
+            expected = baseline.scan();
+            if (token.type != expected.type || !token.spelling.equals(expected.spelling))
+                return false;
+        } while (token.type != Token.TYPE.EOT);
+        return true;
+    }
+
+    /**
+     * Parses source, which must be a program
+     *
+     * @param source
+     * @throws IOException
+     */
+    static void parse(String source) throws IOException {
+        new Parser(new Scanner(new BufferedReader(new StringReader(source)))).parse();
+    }
+
+    /**
+     * Runs pass over source runs times to warm up, then runs more times
+     *
+     * @return the shortest time of the timed runs, in nanoseconds
+     */
+    static long best(Pass pass, String source, int runs) throws IOException {
+        for (int r = 0; r < runs; r++)
+            pass.run(source);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            pass.run(source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int from = 0, runs = 10;
+        if (args.length >= 1 && args[0].matches("[0-9]+")) {
+            runs = Integer.parseInt(args[0]);
+            from = 1;
+        }
+        if (from == args.length)
+            args = new String[] { "-generate", "100000" };
+
+        for (int i = from; i < args.length; i++) {
+            String name, source;
+            if (args[i].equals("-generate") && i + 1 < args.length) {
+                int lines = Integer.parseInt(args[++i]);
+                name = "generated, " + lines + " lines";
+                source = generate(lines);
+            } else {
+                name = args[i];
+                source = new String(Files.readAllBytes(Paths.get(name)));
+            }
+
+            int tokens = scan(source);
+            System.out.println(String.format("%s: %d chars, %d tokens", name, source.length(), tokens));
+            if (!sameTokens(source)) {
+                System.out.println("  the scanner and the baseline scanner differ");
+                continue;
+            }
+            long baseline = best(Benchmark::scanBaseline, source, runs);
+            System.out.println(String.format("  base  %10.3f ms, %6.2f M tokens/s, %6.1f MB/s", baseline / 1e6,
+                    tokens * 1e3 / baseline, source.length() * 1e3 / baseline));
+            long scanned = best(Benchmark::scan, source, runs);
+            System.out.println(String.format("  scan  %10.3f ms, %6.2f M tokens/s, %6.1f MB/s, %.1fx the baseline",
+                    scanned / 1e6, tokens * 1e3 / scanned, source.length() * 1e3 / scanned,
+                    (double) baseline / scanned));
+            long parsed = best(Benchmark::parse, source, runs);
+            System.out.println(String.format("  parse %10.3f ms, %6.2f M tokens/s, %6.1f MB/s", parsed / 1e6,
+                    tokens * 1e3 / parsed, source.length() * 1e3 / parsed));
+        }
+    }
+}
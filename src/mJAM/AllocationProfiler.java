@@ -0,0 +1,146 @@
+/**
+ * Allocation profile of an mJAM program
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Counts the objects and arrays that newobj and newarr allocate, and the
+ * words they take including their two word descriptor, both by class (the
+ * class descriptor address that newobj stores in the descriptor, or -2 for
+ * arrays) and by allocation site (the address of the CALL of the primitive).
+ * Blocks reserved by the raw alloc primitive have no class and are only
+ * counted by site.
+ */
+public final class AllocationProfiler {
+
+    private final int CT;
+
+    // objects and words by allocation site, with a slot for sites outside
+    // the code segment
+    private final long[] siteObjects, siteWords;
+
+    // objects and words by class descriptor address
+    private final TreeMap<Integer, long[]> classes = new TreeMap<Integer, long[]>();
+    private long objects, words;
+
+    AllocationProfiler(int CT) {
+        this.CT = CT;
+        siteObjects = new long[CT + 1];
+        siteWords = new long[CT + 1];
+    }
+
+    /**
+     * Discards the profile, for a run from CB
+     */
+    void reset() {
+        Arrays.fill(siteObjects, 0);
+        Arrays.fill(siteWords, 0);
+        classes.clear();
+        objects = words = 0;
+    }
+
+    /**
+     * Records a block of size words allocated at site for the class whose
+     * descriptor is at classDescAddr
+     */
+    void allocated(int site, int classDescAddr, int size) {
+        allocated(site, size);
+        long[] counts = classes.get(classDescAddr);
+        if (counts == null) {
+            counts = new long[2];
+            classes.put(classDescAddr, counts);
+        }
+        counts[0]++;
+        counts[1] += size;
+    }
+
+    /**
+     * Records a block of size words without a class allocated at site
+     */
+    void allocated(int site, int size) {
+        if (site < Machine.CB || site >= CT)
+            site = CT;
+        siteObjects[site]++;
+        siteWords[site] += size;
+        objects++;
+        words += size;
+    }
+
+    /**
+     * @return number of blocks allocated in the last run
+     */
+    public long getObjects() {
+        return objects;
+    }
+
+    /**
+     * @return number of words allocated in the last run
+     */
+    public long getWords() {
+        return words;
+    }
+
+    /**
+     * @return number of blocks allocated by the instruction at site
+     */
+    public long getObjects(int site) {
+        return (site >= Machine.CB && site < CT) ? siteObjects[site] : 0;
+    }
+
+    public long getWords(int site) {
+        return (site >= Machine.CB && site < CT) ? siteWords[site] : 0;
+    }
+
+    /**
+     * @return number of objects allocated for the class whose descriptor is at
+     *         classDescAddr (-2 for arrays)
+     */
+    public long getClassObjects(int classDescAddr) {
+        long[] counts = classes.get(classDescAddr);
+        return (counts == null) ? 0 : counts[0];
+    }
+
+    public long getClassWords(int classDescAddr) {
+        long[] counts = classes.get(classDescAddr);
+        return (counts == null) ? 0 : counts[1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%d objects, %d words allocated%n", objects, words));
+
+        s.append(String.format("%nBy class%n%12s %12s %6s  %s%n", "objects", "words", "", "class"));
+        Integer[] order = classes.keySet().toArray(new Integer[0]);
+        Arrays.sort(order, (a, b) -> Long.compare(classes.get(b)[1], classes.get(a)[1]));
+        for (int c : order) {
+            long[] counts = classes.get(c);
+            s.append(String.format("%12d %12d %5.1f%%  %s%n", counts[0], counts[1], percent(counts[1]),
+                    HeapSnapshot.className(c)));
+        }
+
+        s.append(String.format("%nBy site%n%12s %12s %6s  %s%n", "objects", "words", "", "site"));
+        order = new Integer[CT + 1];
+        int sites = 0;
+        for (int site = 0; site <= CT; site++) {
+            if (siteObjects[site] > 0)
+                order[sites++] = site;
+        }
+        order = Arrays.copyOf(order, sites);
+        Arrays.sort(order, (a, b) -> Long.compare(siteWords[b], siteWords[a]));
+        for (int site : order) {
+            s.append(String.format("%12d %12d %5.1f%%  %s%n", siteObjects[site], siteWords[site],
+                    percent(siteWords[site]), (site == CT) ? "other" : Integer.toString(site)));
+        }
+        return s.toString();
+    }
+
+    private double percent(long count) {
+        return (words == 0) ? 0 : 100.0 * count / words;
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Compares the throughput of mJAM execution engines
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// benchmark driver: java mJAM.Benchmark [runs] (objectFile | directory)*
+public class Benchmark {
+
+    interface Engine {
+        void run();
+    }
+
+    static final PrintStream discard = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    /**
+     * Runs the loaded program with the given engine, discarding its output
+     *
+     * @return elapsed time in nanoseconds
+     */
+    static long time(Engine engine) {
+        PrintStream out = System.out;
+        System.setOut(discard);
+        long start = System.nanoTime();
+        try {
+            engine.run();
+        } finally {
+            System.setOut(out);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Times runs executions of the program loaded in vm after an equal number
+     * of warmup executions, and reports the mean time per execution.
+     *
+     * @return mean time per execution in nanoseconds
+     */
+    static long measure(String name, Interpreter vm, Engine engine, int runs) {
+        for (int i = 0; i < runs; i++)
+            time(engine);
+
+        long total = 0;
+        for (int i = 0; i < runs; i++)
+            total += time(engine);
+        long mean = total / runs;
+
+        System.out.println(String.format("%-14s %10.3f ms/run %14d dispatches   final status %d", name,
+                mean / 1e6, vm.dispatches, vm.status));
+        return mean;
+    }
+
+    /**
+     * Collects the object files named on the command line, expanding
+     * directories to the .mJAM files they contain
+     */
+    static List<String> objectFiles(String[] args, int from) {
+        List<String> files = new ArrayList<String>();
+        for (int i = from; i < args.length; i++) {
+            File f = new File(args[i]);
+            File[] contents = f.listFiles();
+            if (contents == null) {
+                files.add(args[i]);
+                continue;
+            }
+            Arrays.sort(contents);
+            for (File x : contents) {
+                if (x.getName().endsWith(".mJAM"))
+                    files.add(x.getPath());
+            }
+        }
+        if (files.isEmpty())
+            files.add("obj.mJAM");
+        return files;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("********** mJAM Benchmark **********");
+
+        int from = 0, runs = 10;
+        if (args.length >= 1 && args[0].matches("[0-9]+")) {
+            runs = Integer.parseInt(args[0]);
+            from = 1;
+        }
+
+        long stepped = 0, unfused = 0, fused = 0;
+        for (String objectFileName : objectFiles(args, from)) {
+            Interpreter vm = new Interpreter();
+            if (vm.load(objectFileName)) {
+                System.out.println("Unable to load object file " + objectFileName);
+                continue;
+            }
+            Decoder single = new Decoder(vm.code, vm.CT, false);
+
+            System.out.println(objectFileName + ":");
+            long baseline = measure("step", vm, vm::stepProgram, runs);
+            stepped += vm.dispatches;
+            measure("decoded", vm, () -> {
+                vm.initMachine();
+                vm.runDecoded(single);
+            }, runs);
+            unfused += vm.dispatches;
+            long decoded = measure("fused", vm, vm::interpretProgram, runs);
+            fused += vm.dispatches;
+
+            // same decoding with a stack check on every push, as for code
+            // that fails verification
+            Interpreter checked = new Interpreter();
+            checked.load(vm.code, vm.CT);
+            checked.setVerifying(false);
+            long unverified = measure("fused,checked", checked, checked::interpretProgram, runs);
+
+            // production runs must be unaffected by breakpoints, which only
+            // the debugger loop looks at
+            vm.breakpoints.set(Machine.CB, vm.CT);
+            long trapped = measure("fused+bp", vm, vm::interpretProgram, runs);
+            vm.breakpoints.clear();
+            measure("debugger", vm, vm::runProgramFromStart, runs);
+
+            // methods translated into JVM bytecode
+            Interpreter compiled = new Interpreter();
+            compiled.load(vm.code, vm.CT);
+            compiled.setCompiling(true);
+            long jit = measure("compiled", compiled, compiled::interpretProgram, runs);
+
+            // only hot code translated, once warm and from a freshly loaded
+            // program with no profiles or compiled code
+            Interpreter tiered = new Interpreter();
+            tiered.load(vm.code, vm.CT);
+            tiered.setTiering(Tiers.DEFAULT_INVOCATION_THRESHOLD, Tiers.DEFAULT_BACK_EDGE_THRESHOLD);
+            long warm = measure("tiered", tiered, tiered::interpretProgram, runs);
+            long coldJit = measure("compiled,cold", compiled, () -> {
+                compiled.load(vm.code, vm.CT);
+                compiled.interpretProgram();
+            }, runs);
+            long coldTiered = measure("tiered,cold", tiered, () -> {
+                tiered.load(vm.code, vm.CT);
+                tiered.interpretProgram();
+            }, runs);
+
+            // same program and engine, data store in native memory
+            Interpreter offHeap = new Interpreter(Interpreter.DEFAULT_STACK_SIZE, Interpreter.DEFAULT_HEAP_SIZE, true);
+            offHeap.load(vm.code, vm.CT);
+            long direct = measure("fused,offheap", offHeap, offHeap::interpretProgram, runs);
+
+            System.out.println(String.format("speedup of fused over step: %.2fx, with breakpoints set: %.2fx",
+                    (double) baseline / decoded, (double) baseline / trapped));
+            System.out.println(String.format("speedup of verified over checked: %.2fx (%s)",
+                    (double) unverified / decoded, vm.getVerifier()));
+            System.out.println(String.format("speedup of compiled over fused: %.2fx", (double) decoded / jit));
+            System.out.println(String.format(
+                    "speedup of tiered over fused: %.2fx warm, %.2fx cold (compiled: %.2fx cold)",
+                    (double) decoded / warm, (double) decoded / coldTiered, (double) decoded / coldJit));
+            System.out.println(String.format("off-heap data store: %.2fx the time of on-heap",
+                    (double) direct / decoded));
+
+            // independent machines share nothing, so they run in parallel
+            int threads = Runtime.getRuntime().availableProcessors(), jobs = threads * runs;
+            long parallel = time(() -> {
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                for (int i = 0; i < jobs; i++) {
+                    pool.execute(() -> {
+                        Interpreter job = new Interpreter();
+                        job.load(vm.code, vm.CT);
+                        job.run();
+                    });
+                }
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(1, TimeUnit.HOURS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            System.out.println(String.format("%d runs on %d threads: %.3f ms/run", jobs, threads,
+                    parallel / 1e6 / jobs));
+        }
+
+        if (unfused > 0)
+            System.out.println(String.format("total dispatches: %d stepped, %d decoded, %d fused (%.1f%% saved)",
+                    stepped, unfused, fused, 100.0 * (unfused - fused) / unfused));
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Minimal writer for JVM class files
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Builds a class file with a constant pool and methods, which is all that the
+ * Translator needs. Classes are written in version 49 (Java 5) format, so
+ * their methods are verified by type inference and need no StackMapTable.
+ */
+final class ClassFile {
+
+    // JVM opcodes used by the Translator
+    final static int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, ILOAD = 0x15, LLOAD = 0x16,
+            ALOAD = 0x19, ISTORE = 0x36, LSTORE = 0x37, ASTORE = 0x3a, DUP = 0x59, IADD = 0x60, LADD = 0x61,
+            ISUB = 0x64, LSUB = 0x65, LMUL = 0x69, IDIV = 0x6c, IREM = 0x70, INEG = 0x74, IINC = 0x84, I2L = 0x85,
+            L2I = 0x88, LCMP = 0x94, IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGT = 0x9d, IF_ICMPEQ = 0x9f,
+            IF_ICMPNE = 0xa0,
+            IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7,
+            LOOKUPSWITCH = 0xab, IRETURN = 0xac, RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5,
+            INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, WIDE = 0xc4;
+
+    final static int ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final HashMap<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final int thisClass, superClass;
+    private final List<Method> methods = new ArrayList<Method>();
+
+    /**
+     * @param name
+     *            internal name of the class, e.g. mJAM/Code
+     * @param superName
+     *            internal name of its superclass
+     */
+    ClassFile(String name, String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    // CONSTANT POOL
+
+    private int constant(String key, int tag, int a, int b, String utf8) {
+        Integer index = poolIndex.get(key);
+        if (index != null)
+            return index;
+        try {
+            poolOut.writeByte(tag);
+            if (utf8 != null)
+                poolOut.writeUTF(utf8);
+            else if (tag == 3)
+                poolOut.writeInt(a);
+            else {
+                poolOut.writeShort(a);
+                if (b >= 0)
+                    poolOut.writeShort(b);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    int utf8(String s) {
+        return constant("U" + s, 1, 0, 0, s);
+    }
+
+    int integer(int value) {
+        return constant("I" + value, 3, value, -1, null);
+    }
+
+    int classRef(String name) {
+        return constant("C" + name, 7, utf8(name), -1, null);
+    }
+
+    private int nameAndType(String name, String desc) {
+        return constant("N" + name + ":" + desc, 12, utf8(name), utf8(desc), null);
+    }
+
+    int fieldRef(String owner, String name, String desc) {
+        return constant("F" + owner + "." + name + ":" + desc, 9, classRef(owner), nameAndType(name, desc), null);
+    }
+
+    int methodRef(String owner, String name, String desc) {
+        return constant("M" + owner + "." + name + ":" + desc, 10, classRef(owner), nameAndType(name, desc), null);
+    }
+
+    // METHODS
+
+    /**
+     * Adds a method to the class
+     *
+     * @return the builder for its code
+     */
+    Method method(int access, String name, String desc, int maxStack, int maxLocals) {
+        Method m = new Method(access, utf8(name), utf8(desc), maxStack, maxLocals);
+        methods.add(m);
+        return m;
+    }
+
+    /**
+     * A position in the code of a method, which may be the target of branches
+     * emitted before it is placed
+     */
+    static final class Label {
+        int position = -1;
+        final List<int[]> fixups = new ArrayList<int[]>(); // {instruction, operand, size}
+    }
+
+    /**
+     * Code of a single method
+     */
+    final class Method {
+        private final int access, name, desc, maxStack, maxLocals;
+        private byte[] code = new byte[256];
+        private int length;
+
+        private Method(int access, int name, int desc, int maxStack, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        private void u1(int b) {
+            if (length == code.length)
+                code = Arrays.copyOf(code, 2 * length);
+            code[length++] = (byte) b;
+        }
+
+        private void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        private void u4(int i) {
+            u2(i >> 16);
+            u2(i);
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5)
+                u1(ICONST_0 + value);
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                u1(LDC_W);
+                u2(integer(value));
+            }
+        }
+
+        /**
+         * Emits a load or store of a local variable
+         */
+        void local(int opcode, int index) {
+            if (index > 255) {
+                u1(WIDE);
+                u1(opcode);
+                u2(index);
+            } else {
+                u1(opcode);
+                u1(index);
+            }
+        }
+
+        /**
+         * Adds value to int local variable index
+         */
+        void iinc(int index, int value) {
+            if (value == 0)
+                return;
+            if (index <= 255 && value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(IINC);
+                u1(index);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(WIDE);
+                u1(IINC);
+                u2(index);
+                u2(value);
+            } else {
+                local(ILOAD, index);
+                iconst(value);
+                u1(IADD);
+                local(ISTORE, index);
+            }
+        }
+
+        /**
+         * Emits a getfield, putfield or invoke instruction
+         */
+        void member(int opcode, int ref) {
+            u1(opcode);
+            u2(ref);
+        }
+
+        void place(Label label) {
+            label.position = length;
+            for (int[] fixup : label.fixups)
+                patch(fixup, label);
+            label.fixups.clear();
+        }
+
+        private void target(Label label, int instruction, int size) {
+            int[] fixup = { instruction, length, size };
+            if (size == 2)
+                u2(0);
+            else
+                u4(0);
+            if (label.position >= 0)
+                patch(fixup, label);
+            else
+                label.fixups.add(fixup);
+        }
+
+        /**
+         * Fills in the branch offset of a fixup, now that the position of its
+         * label is known
+         *
+         * @throws IllegalStateException
+         *             if the offset does not fit into a 16 bit branch
+         */
+        private void patch(int[] fixup, Label label) {
+            int offset = label.position - fixup[0], at = fixup[1];
+            if (fixup[2] == 2) {
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                    throw new IllegalStateException("branch offset out of range");
+                code[at] = (byte) (offset >> 8);
+                code[at + 1] = (byte) offset;
+            } else {
+                code[at] = (byte) (offset >> 24);
+                code[at + 1] = (byte) (offset >> 16);
+                code[at + 2] = (byte) (offset >> 8);
+                code[at + 3] = (byte) offset;
+            }
+        }
+
+        void branch(int opcode, Label label) {
+            int instruction = length;
+            u1(opcode);
+            target(label, instruction, 2);
+        }
+
+        /**
+         * Emits a lookupswitch; keys must be in ascending order
+         */
+        void lookupswitch(int[] keys, Label[] labels, Label dflt) {
+            int instruction = length;
+            u1(LOOKUPSWITCH);
+            while (length % 4 != 0)
+                u1(0);
+            target(dflt, instruction, 4);
+            u4(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                u4(keys[i]);
+                target(labels[i], instruction, 4);
+            }
+        }
+    }
+
+    /**
+     * @return the class file
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int code = utf8("Code");
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (Method m : methods) {
+                out.writeShort(m.access);
+                out.writeShort(m.name);
+                out.writeShort(m.desc);
+                out.writeShort(1); // attributes
+                out.writeShort(code);
+                out.writeInt(12 + m.length);
+                out.writeShort(m.maxStack);
+                out.writeShort(m.maxLocals);
+                out.writeInt(m.length);
+                out.write(m.code, 0, m.length);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
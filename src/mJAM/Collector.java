@@ -0,0 +1,347 @@
+/**
+ * Garbage collector for the mJAM heap
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Manages the heap of an Interpreter, which grows downwards from HB to HT.
+ * Every heap block starts with a two word descriptor: the address of the
+ * class descriptor (objects) or -2 (arrays), followed by the number of
+ * fields or elements. Blocks reached from the address a of an object or
+ * array are therefore [a-2, a-1+data[a-1]], and the heap can be walked block
+ * by block from HT to HB.
+ *
+ * mJAM words are untagged, so a word that looks like an object address may
+ * just as well be an integer. The collector is therefore conservative and
+ * non-moving (mark-sweep): it treats every word of the stack segment [SB, ST)
+ * and the OB register as a potential root, and every field or element of a
+ * reachable block as a potential reference. The stack segment includes the
+ * class descriptors, which are static data loaded just above SB and are
+ * never themselves part of the heap. Moving a block would require rewriting
+ * words that may not be references at all, so unreachable blocks are instead
+ * turned into free blocks (tagged FREE) that later allocations reuse. Free
+ * blocks at the bottom of the heap are returned to the stack by raising HT.
+ *
+ * A collection runs when an allocation finds no free block large enough and
+ * bumping HT would leave less than a reserve of 1/8 of the data store between
+ * the stack and the heap, so that the stack keeps room to grow. A collection
+ * that reclaims less than 1/8 of the heap backs off: the heap may then take
+ * half of the space left between the stack and the heap before the next one,
+ * so that a mostly live heap is not traced again at every allocation, while
+ * collections still come more often as that space runs out. A collection
+ * also runs whenever the block would not fit at all. When the
+ * program uses the raw alloc primitive, which does not write a descriptor,
+ * the heap can no longer be walked and collection is disabled for the rest
+ * of the run.
+ */
+public final class Collector {
+
+    // descriptor tag of a free block
+    final static int FREE = -3;
+
+    private final Interpreter vm;
+
+    private boolean enabled = true;
+
+    // false once the heap contains blocks without a descriptor
+    private boolean parseable;
+
+    // words between HT and HB beyond which an allocation in the reserve
+    // collects first, raised by a collection that reclaims little
+    private int threshold;
+
+    // free blocks, by total size in words (descriptor included)
+    private final TreeMap<Integer, ArrayDeque<Integer>> free = new TreeMap<Integer, ArrayDeque<Integer>>();
+
+    // state of the collection in progress: block boundaries and marks,
+    // relative to the heap base, and the marked blocks still to be traced
+    private int heapBase;
+    private BitSet blocks, marked;
+    private int[] pending;
+    private int top;
+
+    // statistics since the start of the current run
+    private int collections;
+    private long pauseNanos, maxPauseNanos, wordsReclaimed;
+
+    Collector(Interpreter vm) {
+        this.vm = vm;
+    }
+
+    /**
+     * Discards the heap state of a previous run
+     */
+    void reset() {
+        parseable = true;
+        threshold = 0;
+        free.clear();
+        collections = 0;
+        pauseNanos = maxPauseNanos = wordsReclaimed = 0;
+    }
+
+    /**
+     * Enables or disables collection. A disabled collector allocates by
+     * moving HT downwards only, as the original mJAM did.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return number of collections in the last run
+     */
+    public int getCollections() {
+        return collections;
+    }
+
+    /**
+     * @return total time spent collecting in the last run, in nanoseconds
+     */
+    public long getPauseNanos() {
+        return pauseNanos;
+    }
+
+    /**
+     * @return longest single collection in the last run, in nanoseconds
+     */
+    public long getMaxPauseNanos() {
+        return maxPauseNanos;
+    }
+
+    /**
+     * @return number of bytes reclaimed in the last run
+     */
+    public long getBytesReclaimed() {
+        return wordsReclaimed * Integer.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d collections, %.3f ms total pause, %.3f ms max pause, %d bytes reclaimed",
+                collections, pauseNanos / 1e6, maxPauseNanos / 1e6, getBytesReclaimed());
+    }
+
+    /**
+     * Reserves a block of size words for the alloc primitive, which leaves
+     * the block without a descriptor.
+     *
+     * @return address of the block
+     */
+    int allocateRaw(int size) {
+        parseable = false;
+        return bump(size);
+    }
+
+    /**
+     * Reserves size words below HT
+     */
+    private int bump(int size) {
+        vm.checkSpace(size);
+        vm.HT = vm.HT - size;
+        return vm.HT;
+    }
+
+    /**
+     * Reserves a block of size words (descriptor included) for newobj or
+     * newarr, collecting garbage first if necessary. If there is no space even
+     * after a collection, sets the machine status to failedDataStoreFull and
+     * reserves the block below HT as the original mJAM did.
+     *
+     * @return address of the block, i.e. of its descriptor
+     */
+    int allocate(int size) {
+        if (!parseable || size < 2)
+            return allocateRaw(size);
+        if (!enabled)
+            return bump(size);
+
+        int block = allocateFree(size);
+        if (block >= 0)
+            return block;
+
+        int reserve = (vm.HB - Interpreter.SB) / 8;
+        long space = (long) vm.HT - vm.ST - size;
+        if (space < 0 || (space < reserve && vm.HB - vm.HT + size > threshold)) {
+            collect();
+            block = allocateFree(size);
+            if (block >= 0)
+                return block;
+        }
+
+        return bump(size);
+    }
+
+    /**
+     * Removes a block of exactly size words from the free blocks, splitting a
+     * larger free block if there is none. The remainder of a split block must
+     * be at least a descriptor long.
+     *
+     * @return address of the block, or -1 if there is no suitable free block
+     */
+    private int allocateFree(int size) {
+        ArrayDeque<Integer> candidates = free.get(size);
+        int total = size;
+        if (candidates == null) {
+            Map.Entry<Integer, ArrayDeque<Integer>> larger = free.ceilingEntry(size + 2);
+            if (larger == null)
+                return -1;
+            candidates = larger.getValue();
+            total = larger.getKey();
+        }
+        int block = candidates.pop();
+        if (candidates.isEmpty())
+            free.remove(total);
+        if (total > size)
+            addFree(block + size, total - size);
+        return block;
+    }
+
+    /**
+     * Turns the total words starting at block into a free block
+     */
+    private void addFree(int block, int total) {
+        vm.data.set(block, FREE);
+        vm.data.set(block + 1, total - 2);
+        ArrayDeque<Integer> sameSize = free.get(total);
+        if (sameSize == null) {
+            sameSize = new ArrayDeque<Integer>();
+            free.put(total, sameSize);
+        }
+        sameSize.push(block);
+    }
+
+    /**
+     * Marks all blocks reachable from the roots, then rebuilds the free
+     * blocks from the unmarked ones, coalescing neighbours.
+     */
+    void collect() {
+        long start = System.nanoTime();
+        if (!trace())
+            return;
+
+        // sweep
+        free.clear();
+        long reclaimed = 0;
+        int run = -1;
+        for (int offset = 0; offset >= 0; offset = blocks.nextSetBit(offset + 1)) {
+            int block = heapBase + offset;
+            if (!marked.get(offset)) {
+                if (vm.data.get(block) != FREE)
+                    reclaimed += vm.data.get(block + 1) + 2;
+                if (run < 0)
+                    run = block;
+            } else if (run >= 0) {
+                release(run, block);
+                run = -1;
+            }
+        }
+        if (run >= 0)
+            release(run, vm.HB);
+        blocks = marked = null;
+        pending = null;
+
+        int extent = vm.HB - heapBase;
+        if (reclaimed < extent / 8)
+            threshold = vm.HB - vm.HT + (vm.HT - vm.ST) / 2;
+        else
+            threshold = 0;
+
+        long pause = System.nanoTime() - start;
+        collections++;
+        pauseNanos += pause;
+        maxPauseNanos = Math.max(maxPauseNanos, pause);
+        wordsReclaimed += reclaimed;
+    }
+
+    /**
+     * Takes a snapshot of the heap, without changing it
+     *
+     * @param CP
+     *            code address to record in the snapshot
+     * @return the snapshot, or null if the heap cannot be walked
+     */
+    HeapSnapshot snapshot(int CP) {
+        if (!parseable || !trace())
+            return null;
+        HeapSnapshot snapshot = new HeapSnapshot(CP, vm.ST, vm.HT, vm.HB);
+        for (int offset = 0; offset >= 0 && heapBase + offset < vm.HB; offset = blocks.nextSetBit(offset + 1)) {
+            int block = heapBase + offset;
+            snapshot.add(vm.data.get(block), vm.data.get(block + 1), marked.get(offset));
+        }
+        blocks = marked = null;
+        pending = null;
+        return snapshot;
+    }
+
+    /**
+     * Finds the block boundaries of the heap and marks the blocks reachable
+     * from the roots
+     *
+     * @return false if the heap cannot be walked
+     */
+    private boolean trace() {
+        heapBase = vm.HT;
+
+        // find the block boundaries
+        blocks = new BitSet(vm.HB - heapBase);
+        for (int block = heapBase; block < vm.HB;) {
+            int fields = vm.data.get(block + 1);
+            if (fields < 0 || fields > vm.HB - block - 2) {
+                parseable = false;
+                blocks = null;
+                return false;
+            }
+            blocks.set(block - heapBase);
+            block += fields + 2;
+        }
+
+        // mark
+        marked = new BitSet(vm.HB - heapBase);
+        pending = new int[64];
+        top = 0;
+        mark(vm.OB);
+        for (int addr = Interpreter.SB; addr < vm.ST; addr++)
+            mark(vm.data.get(addr));
+        while (top > 0) {
+            int block = pending[--top];
+            for (int field = block + 2; field < block + 2 + vm.data.get(block + 1); field++)
+                mark(vm.data.get(field));
+        }
+        return true;
+    }
+
+    /**
+     * Marks the block of the object or array at address ref, if ref is one
+     */
+    private void mark(int ref) {
+        int block = ref - 2;
+        if (block < heapBase || block >= vm.HB)
+            return;
+        int offset = block - heapBase;
+        if (!blocks.get(offset) || marked.get(offset) || vm.data.get(block) == FREE)
+            return;
+        marked.set(offset);
+        if (top == pending.length)
+            pending = Arrays.copyOf(pending, 2 * top);
+        pending[top++] = block;
+    }
+
+    /**
+     * Frees the dead blocks in [from, to). If they are at the bottom of the
+     * heap, HT is raised instead.
+     */
+    private void release(int from, int to) {
+        if (from == heapBase)
+            vm.HT = to;
+        else
+            addFree(from, to - from);
+    }
+}
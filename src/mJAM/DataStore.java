@@ -0,0 +1,79 @@
+/**
+ * Storage for the mJAM data store
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * The words of a machine's data store, addressed from SB (0) to HB - 1. The
+ * interpreter reads and writes the store only through get and set, which the
+ * JIT inlines at every access, so a machine that only ever uses one kind of
+ * store pays no more than for a plain array access.
+ *
+ * An instruction that fails its stack check still writes the words it would
+ * have pushed before the run stops, at most GUARD words from HB on, so each
+ * store holds GUARD words beyond HB.
+ */
+abstract class DataStore {
+
+    // words beyond HB: the three words of a call frame pushed at HB
+    final static int GUARD = 3;
+
+    /**
+     * @return the word at addr
+     */
+    abstract int get(int addr);
+
+    /**
+     * Replaces the word at addr by value
+     */
+    abstract void set(int addr, int value);
+
+    /**
+     * Data store backed by an int array in the Java heap
+     */
+    static final class OnHeap extends DataStore {
+        private final int[] words;
+
+        OnHeap(int size) {
+            words = new int[size + GUARD];
+        }
+
+        int get(int addr) {
+            return words[addr];
+        }
+
+        void set(int addr, int value) {
+            words[addr] = value;
+        }
+    }
+
+    /**
+     * Data store backed by a direct buffer in native memory. Large stores
+     * then neither count against the Java heap limit nor have to be scanned
+     * or copied by the garbage collector.
+     */
+    static final class OffHeap extends DataStore {
+        private final IntBuffer words;
+
+        OffHeap(int size) {
+            if (size > Integer.MAX_VALUE / Integer.BYTES - GUARD)
+                throw new IllegalArgumentException("off-heap data store is limited to "
+                        + (Integer.MAX_VALUE / Integer.BYTES - GUARD) + " words");
+            words = ByteBuffer.allocateDirect((size + GUARD) * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        int get(int addr) {
+            return words.get(addr);
+        }
+
+        void set(int addr, int value) {
+            words.put(addr, value);
+        }
+    }
+}
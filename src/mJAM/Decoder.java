@@ -0,0 +1,459 @@
+/**
+ * Translates mJAM object code into a pre-decoded instruction stream
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.BitSet;
+
+/**
+ * Load-time translation of the code store into flat int arrays. Each
+ * instruction is mapped onto a specialized opcode in which the base register
+ * has already been resolved: registers whose content is fixed once a program
+ * is loaded (CB, CT, PB, PT, SB, CP and ZR) are folded into the displacement,
+ * while LB and OB get opcodes of their own. The interpreter's
+ * dispatch loop therefore never needs to call content() or touch Instruction
+ * objects.
+ *
+ * Instructions that cannot be specialized (e.g. addressing relative to ST, HT
+ * or HB, whose content depends on the data store size of the machine, malformed
+ * fields, or control transfers to addresses outside the code
+ * segment) are decoded as GENERIC, and are executed by the original
+ * single-step interpreter so that their behaviour is unchanged.
+ *
+ * Calls of the arithmetic, logical and relational primitives are decoded as
+ * first-level opcodes of their own (NOT .. NE), so that the interpreter executes
+ * them in a single dispatch instead of going through callPrimitive. Their d
+ * field still holds the primitive number.
+ *
+ * Optionally, the most frequent instruction sequences produced by the miniJava
+ * Encoder (operand loads feeding an arithmetic or relational primitive, loop
+ * conditions, local variable updates and array length) are fused into
+ * superinstructions that execute in a single dispatch. A superinstruction is
+ * placed in the slot of the first instruction of its sequence only; the
+ * remaining slots keep their own decoding, so jumps into the middle of a
+ * sequence remain valid and the operands of the superinstruction can be read
+ * from the slots that follow it.
+ *
+ * For tiered execution, individual slots can be profiled (see count), which
+ * replaces their opcode by COUNT until the profile is removed.
+ */
+public final class Decoder {
+
+    // specialized opcodes
+    public final static int GENERIC = 0, // fall back to Interpreter.interpretOneOperation
+            LOAD = 1, LOAD_LB = 2, LOAD_OB = 3, // LOAD d[r]
+            LOADA = 4, LOADA_LB = 5, LOADA_OB = 6, // LOADA d[r]
+            LOADI = 7, LOADL = 8, //
+            STORE = 9, STORE_LB = 10, STORE_OB = 11, // STORE d[r]
+            STOREI = 12, //
+            CALL = 13, // call of code address d
+            CALLPRIM = 14, // call of primitive d
+            CALLI = 15, CALLD = 16, RETURN = 17, PUSH = 18, POP = 19, //
+            JUMP = 20, JUMPI = 21, JUMPIF = 22, HALT = 23, //
+            END = 24, // sentinel at CT, signals an invalid code address
+
+            // superinstructions, named after their components: L = LOAD d[LB],
+            // K = LOADL, PRIM = CALL of a binary primitive
+            LL_PRIM = 25, LK_PRIM = 26, K_PRIM = 27, LK_PRIM_STORE = 28, // LK_PRIM; STORE d[LB]
+            PRIM_JUMPIF = 29, K_PRIM_JUMPIF = 30, LK_PRIM_JUMPIF = 31, LL_PRIM_JUMPIF = 32, //
+            ARRAY_LENGTH = 33, // LOADL 1; CALL sub; LOADI
+
+            // inlined primitives
+            NOT = 34, AND = 35, OR = 36, SUCC = 37, PRED = 38, NEG = 39, ADD = 40, SUB = 41, MULT = 42, DIV = 43,
+            MOD = 44, LT = 45, LE = 46, GE = 47, GT = 48, EQ = 49, NE = 50,
+
+            // profiled site, see count
+            COUNT = 51;
+
+    // pre-decoded instruction stream, indexed by code address
+    public final int[] op;
+    public final int[] n;
+    public final int[] d;
+
+    // code top of the decoded program
+    public final int CT;
+
+    // execution counts and limits of profiled sites, and the opcodes that
+    // COUNT replaces; null until the first site is profiled
+    int[] counts, limits, counted;
+
+    // limit for the targets of CALLD, which are only known at run time and
+    // are profiled when they are first called; negative if they are not
+    final BitSet called = new BitSet();
+    int callLimit = -1;
+
+    // verification of the code, if it passed and the interpreter may rely on
+    // it to skip stack checks; null otherwise
+    Verifier verified;
+
+    // profile that the interpreter records when it runs this decoding, if any
+    Profiler profiler;
+
+    /**
+     * Decodes code[CB..CT-1] with superinstructions
+     */
+    public Decoder(Instruction[] code, int CT) {
+        this(code, CT, true);
+    }
+
+    /**
+     * Decodes code[CB..CT-1]. The arrays have one extra slot at CT holding the
+     * END sentinel, so that running off the end of the code segment is
+     * detected without a bounds check on every instruction.
+     *
+     * @param code
+     *            the code store
+     * @param CT
+     *            code top
+     * @param fuse
+     *            whether to replace instruction sequences by superinstructions
+     */
+    public Decoder(Instruction[] code, int CT, boolean fuse) {
+        this.CT = CT;
+        op = new int[CT + 1];
+        n = new int[CT + 1];
+        d = new int[CT + 1];
+
+        for (int addr = Machine.CB; addr < CT; addr++) {
+            decode(code[addr], addr);
+        }
+        op[CT] = END;
+
+        if (fuse) {
+            int[] single = op.clone();
+            for (int addr = Machine.CB; addr < CT; addr++) {
+                op[addr] = fuse(single, addr);
+            }
+        }
+    }
+
+    /**
+     * Profiles the instruction at addr: its opcode is replaced by COUNT, which
+     * makes the interpreter count how often it reaches addr and hand the
+     * instruction over to interpretOneOperation, until the count reaches
+     * limit. From then on, the interpreter leaves its dispatch loop whenever
+     * it reaches addr, so that the caller can switch to another tier.
+     */
+    void count(int addr, int limit) {
+        if (counts == null) {
+            counts = new int[CT + 1];
+            limits = new int[CT + 1];
+            counted = new int[CT + 1];
+        }
+        if (op[addr] != COUNT) {
+            counted[addr] = op[addr];
+            op[addr] = COUNT;
+        }
+        limits[addr] = limit;
+    }
+
+    /**
+     * Stops profiling addr, restoring its original decoding
+     */
+    void uncount(int addr) {
+        if (op[addr] == COUNT)
+            op[addr] = counted[addr];
+    }
+
+    /**
+     * Profiles addr, the target of a CALLD, with callLimit unless it has been
+     * called before or is profiled already
+     */
+    void called(int addr) {
+        if (called.get(addr))
+            return;
+        called.set(addr);
+        if (op[addr] != COUNT)
+            count(addr, callLimit);
+    }
+
+    /**
+     * @return true if addr is profiled and has reached its limit
+     */
+    boolean hot(int addr) {
+        return op[addr] == COUNT && counts[addr] >= limits[addr];
+    }
+
+    /**
+     * Decodes a single instruction into slot addr
+     */
+    private void decode(Instruction instr, int addr) {
+        op[addr] = GENERIC;
+        n[addr] = instr.n;
+        d[addr] = instr.d;
+
+        if (instr.op < 0 || instr.op >= Machine.intToOp.length)
+            return;
+
+        int r = instr.r;
+        switch (Machine.intToOp[instr.op]) {
+        case LOAD:
+            op[addr] = addressed(r, addr, LOAD, LOAD_LB, LOAD_OB);
+            break;
+        case LOADA:
+            op[addr] = addressed(r, addr, LOADA, LOADA_LB, LOADA_OB);
+            break;
+        case STORE:
+            op[addr] = addressed(r, addr, STORE, STORE_LB, STORE_OB);
+            break;
+        case LOADI:
+            op[addr] = LOADI;
+            break;
+        case LOADL:
+            op[addr] = LOADL;
+            break;
+        case STOREI:
+            op[addr] = STOREI;
+            break;
+        case CALL:
+            if (isFixed(r)) {
+                int target = instr.d + fixedContent(r, addr);
+                if (target >= Machine.PB && target < Machine.PT) {
+                    op[addr] = primitive(target - Machine.PB);
+                    d[addr] = target - Machine.PB;
+                } else if (validTarget(target)) {
+                    op[addr] = CALL;
+                    d[addr] = target;
+                }
+            }
+            break;
+        case CALLI:
+            if (isFixed(r)) {
+                int target = instr.d + fixedContent(r, addr);
+                if (validTarget(target)) {
+                    op[addr] = CALLI;
+                    d[addr] = target;
+                }
+            }
+            break;
+        case CALLD:
+            op[addr] = CALLD;
+            break;
+        case RETURN:
+            if (instr.n == 0 || instr.n == 1)
+                op[addr] = RETURN;
+            break;
+        case PUSH:
+            op[addr] = PUSH;
+            break;
+        case POP:
+            op[addr] = POP;
+            break;
+        case JUMP:
+        case JUMPIF:
+            if (isFixed(r)) {
+                int target = instr.d + fixedContent(r, addr);
+                if (validTarget(target)) {
+                    op[addr] = (instr.op == Machine.Op.JUMP.ordinal()) ? JUMP : JUMPIF;
+                    d[addr] = target;
+                }
+            }
+            break;
+        case JUMPI:
+            op[addr] = JUMPI;
+            break;
+        case HALT:
+            op[addr] = HALT;
+            break;
+        }
+    }
+
+    /**
+     * Selects the longest superinstruction starting at addr, given the
+     * single-instruction decoding of the code store
+     *
+     * @return the superinstruction, or single[addr] if there is none
+     */
+    private int fuse(int[] single, int addr) {
+        int op0 = single[addr], op1 = single[addr + 1];
+        int op2 = (addr + 2 < CT) ? single[addr + 2] : END;
+        int op3 = (addr + 3 < CT) ? single[addr + 3] : END;
+
+        switch (op0) {
+        case LOAD_LB:
+            if (op1 == LOAD_LB && isRelation(op2, addr + 2) && op3 == JUMPIF)
+                return LL_PRIM_JUMPIF;
+            if (op1 == LOADL && isRelation(op2, addr + 2) && op3 == JUMPIF)
+                return LK_PRIM_JUMPIF;
+            if (op1 == LOADL && isBinary(op2, addr + 2) && op3 == STORE_LB)
+                return LK_PRIM_STORE;
+            if (op1 == LOAD_LB && isBinary(op2, addr + 2))
+                return LL_PRIM;
+            if (op1 == LOADL && isBinary(op2, addr + 2))
+                return LK_PRIM;
+            break;
+        case LOADL:
+            if (d[addr] == 1 && op1 == SUB && op2 == LOADI)
+                return ARRAY_LENGTH;
+            if (isRelation(op1, addr + 1) && op2 == JUMPIF)
+                return K_PRIM_JUMPIF;
+            if (isBinary(op1, addr + 1))
+                return K_PRIM;
+            break;
+        default:
+            if (isRelation(op0, addr) && op1 == JUMPIF)
+                return PRIM_JUMPIF;
+            break;
+        }
+        return op0;
+    }
+
+    /**
+     * @return the opcode for a call of primitive prim
+     */
+    private static int primitive(int prim) {
+        switch (Machine.intToPrim[prim]) {
+        case not:
+            return NOT;
+        case and:
+            return AND;
+        case or:
+            return OR;
+        case succ:
+            return SUCC;
+        case pred:
+            return PRED;
+        case neg:
+            return NEG;
+        case add:
+            return ADD;
+        case sub:
+            return SUB;
+        case mult:
+            return MULT;
+        case div:
+            return DIV;
+        case mod:
+            return MOD;
+        case lt:
+            return LT;
+        case le:
+            return LE;
+        case ge:
+            return GE;
+        case gt:
+            return GT;
+        case eq:
+            return EQ;
+        case ne:
+            return NE;
+        default:
+            return CALLPRIM;
+        }
+    }
+
+    /**
+     * @return true if the instruction decoded as op at addr calls a binary
+     *         primitive
+     */
+    private boolean isBinary(int op, int addr) {
+        return (op == CALLPRIM || (op >= NOT && op <= NE)) && isBinary(d[addr]);
+    }
+
+    /**
+     * @return true if the instruction decoded as op at addr calls a binary
+     *         primitive that cannot fail
+     */
+    private boolean isRelation(int op, int addr) {
+        return (op == CALLPRIM || (op >= NOT && op <= NE)) && isRelation(d[addr]);
+    }
+
+    /**
+     * @return true if primitive prim pops two operands and pushes one result,
+     *         with no effect other than possibly failing
+     */
+    private static boolean isBinary(int prim) {
+        switch (Machine.intToPrim[prim]) {
+        case add:
+        case sub:
+        case mult:
+        case div:
+        case mod:
+            return true;
+        default:
+            return isRelation(prim);
+        }
+    }
+
+    /**
+     * @return true if primitive prim is a binary primitive that cannot fail
+     */
+    private static boolean isRelation(int prim) {
+        switch (Machine.intToPrim[prim]) {
+        case and:
+        case or:
+        case lt:
+        case le:
+        case ge:
+        case gt:
+        case eq:
+        case ne:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Selects the specialized variant of a register-addressed instruction,
+     * folding fixed registers into the displacement.
+     */
+    private int addressed(int r, int addr, int fixedOp, int lbOp, int obOp) {
+        if (r == Machine.Reg.LB.ordinal())
+            return lbOp;
+        if (r == Machine.Reg.OB.ordinal())
+            return obOp;
+        if (isFixed(r)) {
+            d[addr] += fixedContent(r, addr);
+            return fixedOp;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * @return true if the content of register r cannot change while the
+     *         program runs (relative to the instruction that uses it)
+     */
+    private static boolean isFixed(int r) {
+        if (r < 0 || r >= Machine.intToReg.length)
+            return false;
+        switch (Machine.intToReg[r]) {
+        case ST:
+        case LB:
+        case HT:
+        case HB:
+        case OB:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * @return content of fixed register r as seen by the instruction at addr
+     */
+    private int fixedContent(int r, int addr) {
+        switch (Machine.intToReg[r]) {
+        case CB:
+            return Machine.CB;
+        case CT:
+            return CT;
+        case CP:
+            return addr;
+        case PB:
+            return Machine.PB;
+        case PT:
+            return Machine.PT;
+        case SB:
+            return Interpreter.SB;
+        default:
+            return 0;
+        }
+    }
+
+    private boolean validTarget(int target) {
+        return target >= Machine.CB && target < CT;
+    }
+}
@@ -27,6 +27,9 @@ public class Disassembler {
     private boolean error = false;
     private Map<Integer, String> addrToLabel;
 
+    // collects the output instead of asmOut, see format
+    private StringBuilder line;
+
     public Disassembler(String objectFileName) {
         this.objectFileName = objectFileName;
     }
@@ -194,22 +197,14 @@ public class Disassembler {
     }
 
     /**
-     * disassembles program held in code store
+     * Maps the addresses that may be the target of a call or jump in
+     * code[CB..CT-1] to unique labels
      */
-    void disassembleProgram(String asmFileName) {
-
-        try {
-            asmOut = new FileWriter(asmFileName);
-        } catch (IOException e) {
-            System.out.println("Disassembler: can not create asm output file " + asmName);
-            error = true;
-            return;
-        }
-
+    static Map<Integer, String> labels(Instruction[] code, int CT) {
         // collect all addresses that may be the target of a jump instruction
         SortedSet<Integer> targets = new TreeSet<Integer>();
-        for (int addr = Machine.CB; addr < Machine.CT; addr++) {
-            Instruction inst = Machine.code[addr];
+        for (int addr = Machine.CB; addr < CT; addr++) {
+            Instruction inst = code[addr];
             Machine.Op op = Machine.intToOp[inst.op];
             switch (op) {
             case CALL:
@@ -235,12 +230,41 @@ public class Disassembler {
         }
 
         // map branch target addresses to unique labels
-        addrToLabel = new HashMap<Integer, String>();
+        Map<Integer, String> addrToLabel = new HashMap<Integer, String>();
         int labelCounter = 10;
         for (Integer addr : targets) {
             String label = "L" + labelCounter++;
             addrToLabel.put(addr, label);
         }
+        return addrToLabel;
+    }
+
+    /**
+     * @return the assembly-code form of instr, as in the disassembly, with
+     *         control transfers shown as the given labels
+     */
+    static String format(Instruction instr, Map<Integer, String> labels) {
+        Disassembler disassembler = new Disassembler(null);
+        disassembler.addrToLabel = labels;
+        disassembler.line = new StringBuilder();
+        disassembler.writeInstruction(instr);
+        return disassembler.line.toString().trim();
+    }
+
+    /**
+     * disassembles program held in code store
+     */
+    void disassembleProgram(String asmFileName) {
+
+        try {
+            asmOut = new FileWriter(asmFileName);
+        } catch (IOException e) {
+            System.out.println("Disassembler: can not create asm output file " + asmName);
+            error = true;
+            return;
+        }
+
+        addrToLabel = labels(Machine.code, Machine.CT);
 
         // disassemble each instruction
         for (int addr = Machine.CB; addr < Machine.CT; addr++) {
@@ -270,6 +294,10 @@ public class Disassembler {
     }
 
     private void asmWrite(String s) {
+        if (line != null) {
+            line.append(s);
+            return;
+        }
         try {
             asmOut.write(s);
         } catch (IOException e) {
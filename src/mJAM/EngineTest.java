@@ -0,0 +1,136 @@
+/**
+ * Runs failing mJAM programs in every execution engine
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import mJAM.Machine.Op;
+import mJAM.Machine.Prim;
+import mJAM.Machine.Reg;
+
+// test class that checks that interpreted, compiled and tiered runs of a
+// program end with the same status, output and machine state dump
+public class EngineTest {
+
+    static final String[] ENGINES = { "interpreted", "compiled", "tiered" };
+
+    static boolean failed = false;
+
+    public static void main(String[] args) {
+
+        /*
+         * static void p(int a) { int i = 0; while (i < 20) { i = i + 1;
+         * System.out.println(i); } System.out.println(a.x); } with a = 5, which
+         * is not a heap address (not producible from miniJava)
+         */
+        Machine.initCodeGen();
+        int patchme_p = emitCall(5);
+        int label_p = Machine.nextInstrAddr();
+        Machine.patch(patchme_p, label_p);
+        emitLoop(Prim.succ);
+        Machine.emit(Op.LOAD, Reg.LB, -1); // a
+        Machine.emit(Op.LOADL, 0); // field 0
+        Machine.emit(Prim.fieldref);
+        Machine.emit(Prim.putintnl);
+        Machine.emit(Op.RETURN, 0, 0, 1);
+        check("heap reference", Status.FAILED_HEAP_REF);
+
+        /*
+         * static void p(int a) { int i = 1; while (i > 0) { i = i * a;
+         * System.out.println(i); } } with a = 7, which overflows
+         */
+        Machine.initCodeGen();
+        patchme_p = emitCall(7);
+        label_p = Machine.nextInstrAddr();
+        Machine.patch(patchme_p, label_p);
+        emitLoop(null);
+        Machine.emit(Op.RETURN, 0, 0, 1);
+        check("overflow", Status.FAILED_OVERFLOW);
+
+        if (failed)
+            System.exit(1);
+        System.out.println("*** all engines agree");
+    }
+
+    /**
+     * Emits the call of p(arg) followed by HALT
+     * 
+     * @return address of the call, to be patched with the address of p
+     */
+    static int emitCall(int arg) {
+        Machine.emit(Op.LOADL, arg);
+        int patchme = Machine.nextInstrAddr();
+        Machine.emit(Op.CALL, Reg.CB, 0);
+        Machine.emit(Op.HALT, 0, 0, 0);
+        return patchme;
+    }
+
+    /**
+     * Emits the loop of p, printing i as it goes: i = i + 1 while i < 20 if
+     * step is succ, i = i * a while i > 0 if step is null
+     */
+    static void emitLoop(Prim step) {
+        Machine.emit(Op.LOADL, (step != null) ? 0 : 1); // i at 3[LB]
+        int label_test = Machine.nextInstrAddr();
+        Machine.emit(Op.LOAD, Reg.LB, 3);
+        Machine.emit(Op.LOADL, (step != null) ? 20 : 0);
+        Machine.emit((step != null) ? Prim.lt : Prim.gt);
+        int patchme_end = Machine.nextInstrAddr();
+        Machine.emit(Op.JUMPIF, 0, Reg.CB, 0);
+        Machine.emit(Op.LOAD, Reg.LB, 3);
+        if (step != null)
+            Machine.emit(step);
+        else {
+            Machine.emit(Op.LOAD, Reg.LB, -1);
+            Machine.emit(Prim.mult);
+        }
+        Machine.emit(Op.STORE, Reg.LB, 3);
+        Machine.emit(Op.LOAD, Reg.LB, 3);
+        Machine.emit(Prim.putintnl);
+        Machine.emit(Op.JUMP, Reg.CB, label_test);
+        Machine.patch(patchme_end, Machine.nextInstrAddr());
+    }
+
+    /**
+     * Runs the generated program in every engine and reports a failure if
+     * one of the runs does not end with status expected, or if its output
+     * and dump differ from those of the interpreted run
+     */
+    static void check(String name, Status expected) {
+        String first = null;
+        for (int engine = 0; engine < ENGINES.length; engine++) {
+            Interpreter interpreter = new Interpreter();
+            interpreter.load(Machine.code, Machine.CT);
+            if (engine == 1)
+                interpreter.setCompiling(true);
+            else if (engine == 2)
+                interpreter.setTiering(1, 5);
+            ByteArrayOutputStream run = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(run, true);
+            interpreter.setInput(new InputSource(new ByteArrayInputStream(new byte[0])));
+            interpreter.setOutput(new OutputSink(out));
+            interpreter.setConsole(out);
+            Result result = interpreter.execute();
+            interpreter.showStatus();
+            String output = run.toString();
+            if (result.getStatus() != expected) {
+                System.out.println("*** " + name + ": " + ENGINES[engine] + " run ended with status "
+                        + result.getStatus() + " instead of " + expected);
+                failed = true;
+            } else if (first == null)
+                first = output;
+            else if (!output.equals(first)) {
+                System.out.println("*** " + name + ": " + ENGINES[engine] + " run differs from the interpreted run");
+                System.out.print(output);
+                failed = true;
+            }
+        }
+        if (first != null)
+            System.out.print(first);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Snapshot of the mJAM heap
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Summarizes the blocks of the heap at one point of a run: the objects and
+ * arrays that are live (reachable from the roots, as the Collector would
+ * find them), those that are unreachable but not yet collected, and the free
+ * blocks. Live objects are counted by class, i.e. by the address of their
+ * class descriptor; arrays form a class of their own. Sizes are in words and
+ * include the two word descriptor of each block.
+ */
+public final class HeapSnapshot {
+
+    // code address and stack top at which the snapshot was taken, and the
+    // heap bounds
+    private final int CP, ST, HT, HB;
+
+    // objects and words by class descriptor address
+    private final TreeMap<Integer, long[]> live = new TreeMap<Integer, long[]>();
+    private long liveObjects, liveWords, deadObjects, deadWords, freeWords;
+
+    HeapSnapshot(int CP, int ST, int HT, int HB) {
+        this.CP = CP;
+        this.ST = ST;
+        this.HT = HT;
+        this.HB = HB;
+    }
+
+    /**
+     * Adds the block with the given descriptor tag and number of fields
+     */
+    void add(int tag, int fields, boolean reachable) {
+        int words = fields + 2;
+        if (tag == Collector.FREE)
+            freeWords += words;
+        else if (!reachable) {
+            deadObjects++;
+            deadWords += words;
+        } else {
+            long[] counts = live.get(tag);
+            if (counts == null) {
+                counts = new long[2];
+                live.put(tag, counts);
+            }
+            counts[0]++;
+            counts[1] += words;
+            liveObjects++;
+            liveWords += words;
+        }
+    }
+
+    /**
+     * @return the name of the class whose descriptor is at classDescAddr, as
+     *         used in heap reports
+     */
+    static String className(int classDescAddr) {
+        return (classDescAddr == -2) ? "array" : "class@" + classDescAddr;
+    }
+
+    public long getLiveObjects() {
+        return liveObjects;
+    }
+
+    public long getLiveWords() {
+        return liveWords;
+    }
+
+    /**
+     * @return number of live objects of the class whose descriptor is at
+     *         classDescAddr (-2 for arrays)
+     */
+    public long getLiveObjects(int classDescAddr) {
+        long[] counts = live.get(classDescAddr);
+        return (counts == null) ? 0 : counts[0];
+    }
+
+    public long getLiveWords(int classDescAddr) {
+        long[] counts = live.get(classDescAddr);
+        return (counts == null) ? 0 : counts[1];
+    }
+
+    /**
+     * @return number of unreachable objects and their words
+     */
+    public long getUnreachableObjects() {
+        return deadObjects;
+    }
+
+    public long getUnreachableWords() {
+        return deadWords;
+    }
+
+    public long getFreeWords() {
+        return freeWords;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("heap [%d, %d) at CP %d: %d words%n", HT, HB, CP, HB - HT));
+        if (ST > HT)
+            s.append(String.format("stack top %d overlaps the heap, blocks below it may be damaged%n", ST));
+        s.append(String.format("%12d objects %12d words live%n", liveObjects, liveWords));
+        s.append(String.format("%12d objects %12d words unreachable%n", deadObjects, deadWords));
+        s.append(String.format("%12s         %12d words free%n", "", freeWords));
+        s.append(String.format("%nLive objects%n%12s %12s %6s  %s%n", "objects", "words", "", "class"));
+        Integer[] classes = live.keySet().toArray(new Integer[0]);
+        Arrays.sort(classes, (a, b) -> Long.compare(live.get(b)[1], live.get(a)[1]));
+        for (int c : classes) {
+            long[] counts = live.get(c);
+            s.append(String.format("%12d %12d %5.1f%%  %s%n", counts[0], counts[1],
+                    (liveWords == 0) ? 0.0 : 100.0 * counts[1] / liveWords, className(c)));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Inline cache of a CALLD instruction
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+/**
+ * Remembers the methods that a single CALLD site has dispatched to, keyed on
+ * the address of the receiver's class descriptor. On a hit, the interpreter
+ * goes straight to the cached method, skipping the method index check and
+ * the load of the method address from the descriptor.
+ *
+ * A site starts out empty and monomorphic, becomes polymorphic when it sees a
+ * second class, and megamorphic when it sees more than LIMIT classes; a
+ * megamorphic site keeps the classes it has and takes the full dispatch path
+ * for all others.
+ *
+ * Class descriptors are static data that the program builds before it
+ * creates any instances, so the cache assumes that a descriptor does not
+ * change once a site has dispatched through it. The caches of an Interpreter
+ * are emptied at the start of every run.
+ */
+public final class InlineCache {
+
+    // maximum number of classes cached at a site
+    public final static int LIMIT = 4;
+
+    private final int[] classes = new int[LIMIT], targets = new int[LIMIT];
+    private int size;
+    private boolean megamorphic;
+
+    long hits, misses;
+
+    /**
+     * @return the cached method address for the class descriptor at
+     *         classDescAddr, or -1 on a miss
+     */
+    int lookup(int classDescAddr) {
+        for (int i = 0; i < size; i++) {
+            if (classes[i] == classDescAddr) {
+                hits++;
+                return targets[i];
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Caches target as the method to call on instances of the class at
+     * classDescAddr, unless the site already caches LIMIT classes
+     */
+    void add(int classDescAddr, int target) {
+        if (size == LIMIT)
+            megamorphic = true;
+        else {
+            classes[size] = classDescAddr;
+            targets[size] = target;
+            size++;
+        }
+    }
+
+    void clear() {
+        size = 0;
+        megamorphic = false;
+        hits = misses = 0;
+    }
+
+    /**
+     * @return number of dispatches that found their class in the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of dispatches that took the full dispatch path
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of classes cached
+     */
+    public int getClasses() {
+        return size;
+    }
+
+    public boolean isMegamorphic() {
+        return megamorphic;
+    }
+
+    @Override
+    public String toString() {
+        String state = megamorphic ? "megamorphic" : size > 1 ? "polymorphic" : size == 1 ? "monomorphic" : "empty";
+        if (size > 1)
+            state += " (" + size + " classes)";
+        return String.format("%s, %d hits, %d misses", state, hits, misses);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Drives a CALLD site through the states of its inline cache
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import mJAM.Machine.Op;
+import mJAM.Machine.Prim;
+import mJAM.Machine.Reg;
+
+// test class that runs one CALLD site on receivers of a given sequence of
+// classes and checks the methods called and the hits, misses and state of
+// the site's inline cache
+public class InlineCacheTest {
+
+    // number of classes, more than the cache holds
+    static final int CLASSES = InlineCache.LIMIT + 2;
+
+    static boolean failed = false;
+
+    public static void main(String[] args) {
+        // one class, then a hit for each further call
+        check("monomorphic", new int[] { 0, 0, 0 }, 2, 1, 1, false);
+        // every new class is a miss and is cached
+        check("polymorphic", new int[] { 0, 1, 0, 1, 2 }, 2, 3, 3, false);
+        // the fifth class is not cached and misses every time, the first
+        // four still hit
+        check("megamorphic", new int[] { 0, 1, 2, 3, 4, 0, 4, 4, 3 }, 2, 7, 4, true);
+
+        if (failed)
+            System.exit(1);
+        System.out.println("*** inline cache tests passed");
+    }
+
+    /*
+     * class Ck { int p() { return 10 * (k + 1); } } for k < CLASSES
+     * 
+     * static int call(Ck c) { return c.p(); }
+     * 
+     * main: for each receiver k, System.out.println(call(new Ck()));
+     * 
+     * @return address of the CALLD instruction in call
+     */
+    static int generate(int[] receivers) {
+        Machine.initCodeGen();
+        int patchme_setup = Machine.nextInstrAddr();
+        Machine.emit(Op.JUMP, Reg.CB, 0); // jump around the methods
+
+        // p() of each class
+        int[] label_p = new int[CLASSES];
+        for (int k = 0; k < CLASSES; k++) {
+            label_p[k] = Machine.nextInstrAddr();
+            Machine.emit(Op.LOADL, 10 * (k + 1));
+            Machine.emit(Op.RETURN, 1, 0, 0);
+        }
+
+        // call(c), the site under test
+        int label_call = Machine.nextInstrAddr();
+        Machine.emit(Op.LOAD, Reg.LB, -1); // c
+        int site = Machine.nextInstrAddr();
+        Machine.emit(Op.CALLD, 0); // c.p()
+        Machine.emit(Op.RETURN, 1, 0, 1);
+
+        // class descriptor of class k at (1 + 3k)[SB], since CALLD takes
+        // 0[SB] for an invalid descriptor
+        Machine.patch(patchme_setup, Machine.nextInstrAddr());
+        Machine.emit(Op.LOADL, 0);
+        for (int k = 0; k < CLASSES; k++) {
+            Machine.emit(Op.LOADL, -1); // no superclass
+            Machine.emit(Op.LOADL, 1); // number of methods
+            Machine.emit(Op.LOADA, Reg.CB, label_p[k]);
+        }
+
+        for (int k : receivers) {
+            Machine.emit(Op.LOADA, Reg.SB, 1 + 3 * k); // class descriptor
+            Machine.emit(Op.LOADL, 1); // size
+            Machine.emit(Prim.newobj);
+            Machine.emit(Op.CALL, Reg.CB, label_call);
+            Machine.emit(Prim.putintnl);
+        }
+        Machine.emit(Op.HALT, 0, 0, 0);
+        return site;
+    }
+
+    /**
+     * Runs the site on instances of the classes in receivers, and reports a
+     * failure if a call does not reach the method of its receiver's class or
+     * the site's inline cache does not end with the given hits, misses,
+     * number of classes and megamorphic state
+     */
+    static void check(String name, int[] receivers, int hits, int misses, int classes, boolean megamorphic) {
+        int site = generate(receivers);
+        Interpreter interpreter = new Interpreter();
+        interpreter.load(Machine.code, Machine.CT);
+        ByteArrayOutputStream run = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(run, true);
+        interpreter.setInput(new InputSource(new ByteArrayInputStream(new byte[0])));
+        interpreter.setOutput(new OutputSink(out));
+        interpreter.setConsole(out);
+        Result result = interpreter.execute();
+
+        int[] expected = new int[receivers.length];
+        for (int i = 0; i < receivers.length; i++)
+            expected[i] = 10 * (receivers[i] + 1);
+        InlineCache cache = interpreter.getInlineCache(site);
+        String problem = null;
+        if (!result.isHalted())
+            problem = "ended with status " + result.getStatus();
+        else if (!Arrays.equals(result.getValues(), expected))
+            problem = "called " + Arrays.toString(result.getValues()) + " instead of " + Arrays.toString(expected);
+        else if (cache == null)
+            problem = "has no inline cache at " + site;
+        else if (cache.getHits() != hits || cache.getMisses() != misses || cache.getClasses() != classes
+                || cache.isMegamorphic() != megamorphic)
+            problem = "ended " + cache;
+        if (problem != null) {
+            System.out.println("*** " + name + " site " + problem);
+            failed = true;
+        } else
+            System.out.println(name + ": " + cache);
+    }
+}
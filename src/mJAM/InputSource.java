@@ -0,0 +1,215 @@
+/**
+ * Buffered input of the mJAM get primitives
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Supplies the bytes read by get, geteol and getint from a large buffer, and
+ * parses integers for getint directly from it. The bytes come from an
+ * InputStream, a ReadableByteChannel, a memory-mapped file, or by default
+ * from whatever System.in is at the time the buffer is refilled.
+ *
+ * The source also keeps the last character read (current), which the eol and
+ * eof primitives test: '\n' at the end of a line, -1 at the end of the input.
+ */
+public final class InputSource {
+
+    public final static int DEFAULT_CAPACITY = 1 << 16;
+
+    // largest region of a file mapped at once
+    private final static long MAX_MAPPING = 1 << 30;
+
+    private final InputStream stream;
+    private final ReadableByteChannel channel;
+
+    // mapped file: the region mapped last, and how much of the file has been
+    // mapped so far
+    private final FileChannel file;
+    private ByteBuffer region;
+    private long mapped, size;
+
+    // buffered input: bytes[position..limit-1] are still to be read
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+    private int position, limit;
+
+    // last character read, or -1 at the end of the input
+    int current;
+
+    // output to flush before waiting for input
+    OutputSink output;
+
+    /**
+     * Creates a source that reads from System.in
+     */
+    public InputSource() {
+        this(null, null, null, DEFAULT_CAPACITY);
+    }
+
+    public InputSource(InputStream stream) {
+        this(stream, DEFAULT_CAPACITY);
+    }
+
+    public InputSource(InputStream stream, int capacity) {
+        this(stream, null, null, capacity);
+        if (stream == null)
+            throw new IllegalArgumentException("no input stream");
+    }
+
+    public InputSource(ReadableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    public InputSource(ReadableByteChannel channel, int capacity) {
+        this(null, channel, null, capacity);
+        if (channel == null)
+            throw new IllegalArgumentException("no input channel");
+    }
+
+    /**
+     * Creates a source that maps the file from its current position to its
+     * end into memory
+     *
+     * @throws IOException
+     *             if the size or position of the file cannot be determined
+     */
+    public InputSource(FileChannel file) throws IOException {
+        this(null, null, file, DEFAULT_CAPACITY);
+        mapped = file.position();
+        size = file.size();
+        region = ByteBuffer.allocate(0);
+    }
+
+    private InputSource(InputStream stream, ReadableByteChannel channel, FileChannel file, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("input buffer of " + capacity + " bytes is too small");
+        this.stream = stream;
+        this.channel = channel;
+        this.file = file;
+        bytes = new byte[capacity];
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * @return a source for the standard input of the process, which maps it
+     *         into memory if it is redirected from a file
+     */
+    public static InputSource stdin() {
+        try {
+            FileChannel file = new FileInputStream(FileDescriptor.in).getChannel();
+            if (file.size() > file.position())
+                return new InputSource(file);
+        } catch (IOException e) {
+            // a terminal or pipe
+        }
+        return new InputSource(System.in);
+    }
+
+    /**
+     * Refills the buffer once it is empty. A mapped file is copied into the
+     * buffer in bulk, which is cheaper than reading the mapping byte by byte.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        int count;
+        if (file != null) {
+            if (!region.hasRemaining()) {
+                if (mapped >= size)
+                    return false;
+                long length = Math.min(size - mapped, MAX_MAPPING);
+                region = file.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+                mapped += length;
+            }
+            count = Math.min(region.remaining(), bytes.length);
+            region.get(bytes, 0, count);
+        } else {
+            // reading may block, so the program's prompts must be out
+            if (output != null && output.flush())
+                throw new IOException("cannot write output");
+            do {
+                if (channel != null) {
+                    buffer.clear();
+                    count = channel.read(buffer);
+                } else {
+                    InputStream in = (stream != null) ? stream : System.in;
+                    count = in.read(bytes, 0, bytes.length);
+                }
+            } while (count == 0);
+            if (count < 0)
+                return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    /**
+     * @return the next byte of the input, or -1 at its end
+     */
+    int read() throws IOException {
+        if (position == limit && !fill())
+            return -1;
+        return bytes[position++] & 0xff;
+    }
+
+    /**
+     * Reads a character (get)
+     */
+    int get() throws IOException {
+        return current = read();
+    }
+
+    /**
+     * Skips to the end of the current line (geteol), or of the input
+     */
+    void skipLine() throws IOException {
+        do
+            current = read();
+        while (current != '\n' && current != -1);
+    }
+
+    /**
+     * Reads an integer (getint): skips whitespace, then takes any number of
+     * signs, the last of which counts, and the digits that follow them. The
+     * character after the integer is consumed and becomes current. Without
+     * digits the result is 0; with too many, it wraps around.
+     */
+    int readInt() throws IOException {
+        int c;
+        do
+            c = read();
+        while (isWhitespace(c));
+
+        int sign = 1;
+        while (c == '-' || c == '+') {
+            sign = (c == '-') ? -1 : 1;
+            c = read();
+        }
+
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        current = c;
+        return sign * value;
+    }
+
+    /**
+     * @return Character.isWhitespace for a byte, or false for -1
+     */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1c && c <= 0x1f);
+    }
+}
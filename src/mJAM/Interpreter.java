@@ -1,5 +1,7 @@
 /**
- * Interprets mJAM programs
+ * Interprets mJAM programs. Each Interpreter is a complete machine with its own
+ * code store, data store and registers, so independent programs can be run
+ * concurrently in separate instances.
  * @author prins
  * @version COMP 520 V2.2
  */
@@ -9,41 +11,133 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Scanner;
 
 // import mJAM.Machine.Reg;
 
 public class Interpreter {
 
+    // CODE STORE
+    Instruction[] code = new Instruction[0];
+
     // DATA STORE
-    static int[] data = new int[1024];
+    final DataStore data;
+
+    // manages the heap part of the data store
+    final Collector collector = new Collector(this);
+
+    // default data store layout, in words
+    public final static int DEFAULT_STACK_SIZE = 512, DEFAULT_HEAP_SIZE = 512;
 
     // DATA STORE REGISTERS AND OTHER REGISTERS
-    final static int CB = 0, SB = 0, HB = 1024; // = upper bound of data array +
-                                                // 1
+    final static int CB = 0, SB = 0;
+    final int HB; // = upper bound of data store + 1
 
-    static int CT, CP, ST, HT, LB, OB, status, temp;
+    int CT, CP, ST, HT, LB, OB, status, temp;
 
     // machine status values
-    final static int running = 0, halted = 1, failedDataStoreFull = 2, failedInvalidCodeAddress = 3,
+    public final static int running = 0, halted = 1, failedDataStoreFull = 2, failedInvalidCodeAddress = 3,
             failedInvalidInstruction = 4, failedOverflow = 5, failedZeroDivide = 6, failedIOError = 7,
-            failedArrayIndex = 8, failedNullRef = 9, failedHeapRef = 10, failedMethodIndex = 11;
+            failedArrayIndex = 8, failedNullRef = 9, failedHeapRef = 10, failedMethodIndex = 11,
+            failedTimeLimit = 12;
+
+    long accumulator;
+
+    // result of binaryPrimitive when the primitive would fail
+    final static long NOFOLD = Long.MIN_VALUE;
+
+    // number of dispatches performed by the last run, and of instructions
+    // executed by it, or -1 once compiled code has run
+    long dispatches, instructions;
+
+    // time a run may take in nanoseconds, or 0 for no limit, and the
+    // System.nanoTime at which the current run reaches it
+    long timeLimit, deadline;
+
+    // dispatches between checks of the time limit
+    final static int POLL_INTERVAL = 1 << 16;
+
+    // Pre-decoded code store
+    Decoder decoded;
+
+    // inline caches of the CALLD instructions, by code address
+    InlineCache[] inlineCaches;
+
+    // static verification of the loaded code, and whether verified code
+    // runs without a stack check on every push
+    Verifier verifier;
+    boolean verifying = true;
+
+    // values printed by putintnl in the current run, if they are recorded
+    int[] values;
+    int valueCount;
+
+    // execution profile of the loaded program, if runs are profiled
+    Profiler profiler;
+    boolean profiling;
 
-    static long accumulator;
+    // allocations of the last run, if they are profiled, and the heap at the
+    // end of the last run, if snapshots are taken
+    AllocationProfiler allocations;
+    boolean profilingAllocations, snapshotting;
+    HeapSnapshot snapshot;
+
+    // tiered execution: thresholds at which profiled sites are compiled, and
+    // the profiles and compiled code, created on the first tiered run of a
+    // program
+    boolean tiered;
+    int invocationThreshold, backEdgeThreshold;
+    Tiers tiers;
 
     // Debugger state
     enum DebuggerStatus {
         PAUSED, RUNNING
     }
 
-    static DebuggerStatus debuggerStatus = DebuggerStatus.PAUSED;
-    static ArrayList<Integer> breakpoints = new ArrayList<Integer>();
-    static ArrayList<String> sourceLines;
+    DebuggerStatus debuggerStatus = DebuggerStatus.PAUSED;
+    BitSet breakpoints = new BitSet();
+    ArrayList<String> sourceLines;
+
+    /**
+     * Creates a machine with the default data store of 1024 words
+     */
+    public Interpreter() {
+        this(DEFAULT_STACK_SIZE, DEFAULT_HEAP_SIZE, false);
+    }
+
+    /**
+     * Creates a machine with a data store of stackSize + heapSize words. The
+     * stack grows upwards from SB and the heap downwards from HB, so either
+     * one may use space that the other leaves free.
+     * 
+     * @param stackSize
+     *            words reserved for the stack
+     * @param heapSize
+     *            words reserved for the heap
+     * @param offHeap
+     *            whether to keep the data store in native memory rather than
+     *            in the Java heap
+     */
+    public Interpreter(int stackSize, int heapSize, boolean offHeap) {
+        if (stackSize < 0 || heapSize < 0
+                || (long) SB + stackSize + heapSize > Integer.MAX_VALUE - DataStore.GUARD)
+            throw new IllegalArgumentException("invalid data store size " + stackSize + " + " + heapSize);
+        HB = SB + stackSize + heapSize;
+        data = offHeap ? new DataStore.OffHeap(HB) : new DataStore.OnHeap(HB);
+        input.output = output;
+    }
 
-    static int content(int r) {
+    int content(int r) {
         // Returns the current content of register r,
         Machine.Reg reg = Machine.intToReg[r];
         switch (reg) {
@@ -76,61 +170,63 @@ public class Interpreter {
 
     // PROGRAM STATUS
 
-    static void dump() {
+    void dump() {
         // Writes a summary of the machine state.
+        flushOutput();
+        PrintStream out = console();
         int addr, dynamicLink;
-        System.out.println("");
-        System.out.println("At instruction " + CP + ", state of mJAM data store and registers is:");
-        System.out.println("");
+        out.println("");
+        out.println("At instruction " + CP + ", state of mJAM data store and registers is:");
+        out.println("");
         if (HT == HB)
-            System.out.println("            |--------|          (heap is empty)");
+            out.println("            |--------|          (heap is empty)");
         else {
-            System.out.println("      HB--> ");
-            System.out.println("            |--------|");
+            out.println("      HB--> ");
+            out.println("            |--------|");
             for (addr = HB - 1; addr >= HT; addr--) {
-                System.out.print(rightPad(6, addr + ":"));
+                out.print(rightPad(6, addr + ":"));
                 if (addr == OB)
-                    System.out.print("OB--> ");
+                    out.print("OB--> ");
                 else if (addr == HT)
-                    System.out.print("HT--> ");
+                    out.print("HT--> ");
                 else
-                    System.out.print("      ");
-                System.out.println("|" + leftPad(8, String.valueOf(data[addr])) + "|");
+                    out.print("      ");
+                out.println("|" + leftPad(8, String.valueOf(data.get(addr))) + "|");
             }
-            System.out.println("            |--------|");
+            out.println("            |--------|");
         }
-        System.out.println("            |////////|");
-        System.out.println("            |////////|");
+        out.println("            |////////|");
+        out.println("            |////////|");
         if (ST == SB)
-            System.out.println("            |--------|          (stack is empty)");
+            out.println("            |--------|          (stack is empty)");
         else {
             dynamicLink = LB;
-            System.out.println("      ST--> |////////|");
-            System.out.println("            |--------|");
+            out.println("      ST--> |////////|");
+            out.println("            |--------|");
             for (addr = ST - 1; addr >= SB; addr--) {
-                System.out.print(rightPad(6, addr + ": "));
+                out.print(rightPad(6, addr + ": "));
                 if (addr == SB)
-                    System.out.print("SB--> ");
+                    out.print("SB--> ");
                 else if (addr == LB)
-                    System.out.print("LB--> ");
+                    out.print("LB--> ");
                 else
-                    System.out.print("      ");
+                    out.print("      ");
                 if ((addr == dynamicLink) && (dynamicLink != SB))
-                    System.out.print("|OB=" + leftPad(5, String.valueOf(data[addr])) + "|");
+                    out.print("|OB=" + leftPad(5, String.valueOf(data.get(addr))) + "|");
                 else if ((addr == dynamicLink + 1) && (dynamicLink != SB))
-                    System.out.print("|DL=" + leftPad(5, String.valueOf(data[addr])) + "|");
+                    out.print("|DL=" + leftPad(5, String.valueOf(data.get(addr))) + "|");
                 else if ((addr == dynamicLink + 2) && (dynamicLink != SB))
-                    System.out.print("|RA=" + leftPad(5, String.valueOf(data[addr])) + "|");
+                    out.print("|RA=" + leftPad(5, String.valueOf(data.get(addr))) + "|");
                 else
-                    System.out.print("|" + leftPad(8, String.valueOf(data[addr])) + "|");
-                System.out.println("");
+                    out.print("|" + leftPad(8, String.valueOf(data.get(addr))) + "|");
+                out.println("");
                 if (addr == dynamicLink) {
-                    System.out.println("            |--------|");
-                    dynamicLink = data[addr + 1];
+                    out.println("            |--------|");
+                    dynamicLink = data.get(addr + 1);
                 }
             }
         }
-        System.out.println("");
+        out.println("");
     }
 
     private static String leftPad(int len, String s) {
@@ -146,65 +242,39 @@ public class Interpreter {
         return r.substring(0, aLen);
     }
 
-    static void showStatus() {
-        // Writes an indication of whether and why the program has terminated.
-        System.out.println("");
-        System.out.print("*** ");
-        switch (status) {
-        case running:
-            System.out.println("Program is running.");
-            break;
-        case halted:
-            System.out.println("Program has halted normally.");
-            break;
-        case failedDataStoreFull:
-            System.out.println("Program has failed due to exhaustion of Data Store.");
-            break;
-        case failedInvalidCodeAddress:
-            System.out.println("Program has failed due to an invalid code address.");
-            break;
-        case failedInvalidInstruction:
-            System.out.println("Program has failed due to an invalid instruction.");
-            break;
-        case failedOverflow:
-            System.out.println("Program has failed due to overflow.");
-            break;
-        case failedZeroDivide:
-            System.out.println("Program has failed due to division by zero.");
-            break;
-        case failedIOError:
-            System.out.println("Program has failed due to an IO error.");
-            break;
-        case failedArrayIndex:
-            System.out.println("Program has failed due to an array index error.");
-            break;
-        case failedNullRef:
-            System.out.println("Program has failed due to a null pointer reference.");
-            break;
-        case failedHeapRef:
-            System.out.println("Program has failed due to an invalid Heap reference.");
-            break;
-        case failedMethodIndex:
-            System.out.println("Program has failed due to an improper method index in CALLD.");
-            break;
-        default:
-            System.out.println("Machine is in an unknown state.");
-            break;
-        }
+    /**
+     * Writes an indication of whether and why the last run has terminated to
+     * the console, followed by the machine state if it failed
+     */
+    public synchronized void showStatus() {
+        flushOutput();
+        PrintStream out = console();
+        out.println("");
+        out.print("*** ");
+        Status current = Status.of(status);
+        out.println((current != null) ? current.getMessage() : "Machine is in an unknown state.");
         if (status != halted)
             dump();
     }
 
+    // stream of the machine state dumps and status messages, System.out at
+    // the time of writing if null
+    PrintStream console;
+
+    private PrintStream console() {
+        return (console != null) ? console : System.out;
+    }
+
     // INTERPRETATION
 
-    static void checkSpace(int spaceNeeded) {
+    void checkSpace(int spaceNeeded) {
         // Signals failure if there is not enough space to expand the stack or
         // heap by spaceNeeded.
         if (HT - ST < spaceNeeded)
             status = failedDataStoreFull;
     }
 
-    static boolean invalidHeapRef(int addr) {
+    boolean invalidHeapRef(int addr) {
         // if addr is null ptr or outside of heap bounds, sets status to failure
         if (addr == Machine.nullRep)
             status = failedNullRef;
@@ -218,7 +288,7 @@ public class Interpreter {
         return (datum == Machine.trueRep);
     }
 
-    static int overflowChecked(long datum) {
+    int overflowChecked(long datum) {
         // Signals failure if the datum is too large to fit into a single word,
         // otherwise returns the datum as a single word.
         if ((Machine.minintRep <= datum) && (datum <= Machine.maxintRep))
@@ -233,34 +303,24 @@ public class Interpreter {
         return b ? Machine.trueRep : Machine.falseRep;
     }
 
-    static int currentChar;
-
-    static int readInt() throws java.io.IOException {
-        int temp = 0;
-        int sign = 1;
+    // output of the put primitives, buffered until the next flushOutput
+    OutputSink output = new OutputSink();
 
-        do {
-            currentChar = System.in.read();
-        } while (Character.isWhitespace((char) currentChar));
-
-        if ((currentChar == '-') || (currentChar == '+'))
-            do {
-                sign = (currentChar == '-') ? -1 : 1;
-                currentChar = System.in.read();
-            } while ((currentChar == '-') || currentChar == '+');
-
-        if (Character.isDigit((char) currentChar))
-            do {
-                temp = temp * 10 + (currentChar - '0');
-                currentChar = System.in.read();
-            } while (Character.isDigit((char) currentChar));
-
-        return sign * temp;
+    /**
+     * Writes the buffered program output; if that fails while the program
+     * is running or has just halted, sets the status to failedIOError
+     */
+    void flushOutput() {
+        if (output.flush() && (status == running || status == halted))
+            status = failedIOError;
     }
 
+    // input of the get primitives, which flushes output before it blocks
+    InputSource input = new InputSource();
+
     // Invoke primitive operation with argument(s) on the stack
     // primitives are static and are not supplied an instance on the stack.
-    static void callPrimitive(int id) {
+    void callPrimitive(int id) {
 
         int addr, size, index;
         char ch;
@@ -270,231 +330,288 @@ public class Interpreter {
         case id:
             break; // nothing to be done
         case not:
-            data[ST - 1] = toInt(!isTrue(data[ST - 1]));
+            data.set(ST - 1, toInt(!isTrue(data.get(ST - 1))));
             break;
         case and:
             ST = ST - 1;
-            data[ST - 1] = toInt(isTrue(data[ST - 1]) & isTrue(data[ST]));
+            data.set(ST - 1, toInt(isTrue(data.get(ST - 1)) & isTrue(data.get(ST))));
             break;
         case or:
             ST = ST - 1;
-            data[ST - 1] = toInt(isTrue(data[ST - 1]) | isTrue(data[ST]));
+            data.set(ST - 1, toInt(isTrue(data.get(ST - 1)) | isTrue(data.get(ST))));
             break;
         case succ:
-            data[ST - 1] = overflowChecked(data[ST - 1] + 1);
+            data.set(ST - 1, overflowChecked(data.get(ST - 1) + 1));
             break;
         case pred:
-            data[ST - 1] = overflowChecked(data[ST - 1] - 1);
+            data.set(ST - 1, overflowChecked(data.get(ST - 1) - 1));
             break;
         case neg:
-            data[ST - 1] = overflowChecked(-data[ST - 1]);
+            data.set(ST - 1, overflowChecked(-data.get(ST - 1)));
             break;
         case add:
             ST = ST - 1;
-            accumulator = data[ST - 1];
-            data[ST - 1] = overflowChecked(accumulator + data[ST]);
+            accumulator = data.get(ST - 1);
+            data.set(ST - 1, overflowChecked(accumulator + data.get(ST)));
             break;
         case sub:
             ST = ST - 1;
-            accumulator = data[ST - 1];
-            data[ST - 1] = overflowChecked(accumulator - data[ST]);
+            accumulator = data.get(ST - 1);
+            data.set(ST - 1, overflowChecked(accumulator - data.get(ST)));
             break;
         case mult:
             ST = ST - 1;
-            accumulator = data[ST - 1];
-            data[ST - 1] = overflowChecked(accumulator * data[ST]);
+            accumulator = data.get(ST - 1);
+            data.set(ST - 1, overflowChecked(accumulator * data.get(ST)));
             break;
         case div:
             ST = ST - 1;
-            accumulator = data[ST - 1];
-            if (data[ST] != 0)
-                data[ST - 1] = (int) (accumulator / data[ST]);
+            accumulator = data.get(ST - 1);
+            if (data.get(ST) != 0)
+                data.set(ST - 1, (int) (accumulator / data.get(ST)));
             else
                 status = failedZeroDivide;
             break;
         case mod:
             ST = ST - 1;
-            accumulator = data[ST - 1];
-            if (data[ST] != 0)
-                data[ST - 1] = (int) (accumulator % data[ST]);
+            accumulator = data.get(ST - 1);
+            if (data.get(ST) != 0)
+                data.set(ST - 1, (int) (accumulator % data.get(ST)));
             else
                 status = failedZeroDivide;
             break;
         case lt:
             ST = ST - 1;
-            data[ST - 1] = toInt(data[ST - 1] < data[ST]);
+            data.set(ST - 1, toInt(data.get(ST - 1) < data.get(ST)));
             break;
         case le:
             ST = ST - 1;
-            data[ST - 1] = toInt(data[ST - 1] <= data[ST]);
+            data.set(ST - 1, toInt(data.get(ST - 1) <= data.get(ST)));
             break;
         case ge:
             ST = ST - 1;
-            data[ST - 1] = toInt(data[ST - 1] >= data[ST]);
+            data.set(ST - 1, toInt(data.get(ST - 1) >= data.get(ST)));
             break;
         case gt:
             ST = ST - 1;
-            data[ST - 1] = toInt(data[ST - 1] > data[ST]);
+            data.set(ST - 1, toInt(data.get(ST - 1) > data.get(ST)));
             break;
         case eq:
             ST = ST - 1;
-            data[ST - 1] = toInt(data[ST - 1] == data[ST]);
+            data.set(ST - 1, toInt(data.get(ST - 1) == data.get(ST)));
             break;
         case ne:
             ST = ST - 1;
-            data[ST - 1] = toInt(data[ST - 1] != data[ST]);
+            data.set(ST - 1, toInt(data.get(ST - 1) != data.get(ST)));
             break;
         case eol:
-            data[ST] = toInt(currentChar == '\n');
+            data.set(ST, toInt(input.current == '\n'));
             ST = ST + 1;
             break;
         case eof:
-            data[ST] = toInt(currentChar == -1);
+            data.set(ST, toInt(input.current == -1));
             ST = ST + 1;
             break;
         case get:
             ST = ST - 1;
-            addr = data[ST];
+            addr = data.get(ST);
             try {
-                currentChar = System.in.read();
+                input.get();
             } catch (java.io.IOException s) {
                 status = failedIOError;
             }
-            data[addr] = (int) currentChar;
+            data.set(addr, input.current);
             break;
         case put:
             ST = ST - 1;
-            ch = (char) data[ST];
-            System.out.print(ch);
+            ch = (char) data.get(ST);
+            if (output.put(ch))
+                status = failedIOError;
             break;
         case geteol:
             try {
-                while ((currentChar = System.in.read()) != '\n')
-                    ;
+                input.skipLine();
             } catch (java.io.IOException s) {
                 status = failedIOError;
             }
             break;
         case puteol:
-            System.out.println("");
+            if (output.putEol())
+                status = failedIOError;
             break;
         case getint:
             ST = ST - 1;
-            addr = data[ST];
+            addr = data.get(ST);
             try {
-                accumulator = readInt();
+                accumulator = input.readInt();
             } catch (java.io.IOException s) {
                 status = failedIOError;
             }
-            data[addr] = (int) accumulator;
+            data.set(addr, (int) accumulator);
             break;
         case putint:
             ST = ST - 1;
-            accumulator = data[ST];
-            System.out.print(accumulator);
+            accumulator = data.get(ST);
+            if (output.putInt((int) accumulator))
+                status = failedIOError;
             break;
         // output with prefix for tester
         case putintnl:
             ST = ST - 1;
-            accumulator = data[ST];
-            System.out.print(">>> " + accumulator + "\n");
+            accumulator = data.get(ST);
+            if (output.putIntNl((int) accumulator))
+                status = failedIOError;
+            if (values != null) {
+                if (valueCount == values.length)
+                    values = Arrays.copyOf(values, 2 * valueCount);
+                values[valueCount++] = (int) accumulator;
+            }
             break;
         case alloc:
-            size = data[ST - 1];
-            checkSpace(size);
-            HT = HT - size;
-            data[ST - 1] = HT;
+            size = data.get(ST - 1);
+            data.set(ST - 1, collector.allocateRaw(size));
+            if (allocations != null)
+                allocations.allocated(CP, size);
             break;
         case dispose:
             ST = ST - 1; // no action taken at present
             break;
         case newobj:
             // ..., class obj addr, number of fields ==> ..., new obj addr
-            size = data[ST - 1] + 2; // number of fields + 2 word descriptor
-            checkSpace(size);
-            HT = HT - size; // reserve space
-            data[HT] = data[ST - 2]; // set class object addr
-            data[HT + 1] = size - 2; // set size of object
-            data[ST - 2] = HT + 2; // addr of new object instance, returned on
+            size = data.get(ST - 1) + 2; // number of fields + 2 word descriptor
+            addr = collector.allocate(size); // reserve space
+            data.set(addr, data.get(ST - 2)); // set class object addr
+            data.set(addr + 1, size - 2); // set size of object
+            if (allocations != null)
+                allocations.allocated(CP, data.get(addr), size);
+            data.set(ST - 2, addr + 2); // addr of new object instance, returned on
                                    // stack
             ST = ST - 1; // net effect of pop 2 args, push 1 result
             for (int i = 2; i < size; i++) {
-                data[HT + i] = 0; // zero all fields of new object
+                data.set(addr + i, 0); // zero all fields of new object
             }
             break;
         case newarr:
             // ..., number of elements ==> ..., new int[] addr
-            size = data[ST - 1] + 2; // array + 2 word descriptor
-            checkSpace(size);
-            HT = HT - size;
-            data[HT] = -2; // tag for array
-            data[HT + 1] = size - 2; // size of array
-            data[ST - 1] = HT + 2; // addr of array instance, returned on stack
+            size = data.get(ST - 1) + 2; // array + 2 word descriptor
+            addr = collector.allocate(size);
+            data.set(addr, -2); // tag for array
+            data.set(addr + 1, size - 2); // size of array
+            if (allocations != null)
+                allocations.allocated(CP, -2, size);
+            data.set(ST - 1, addr + 2); // addr of array instance, returned on stack
             for (int i = 2; i < size; i++) {
-                data[HT + i] = 0; // zero all elements of new array
+                data.set(addr + i, 0); // zero all elements of new array
             }
             break;
         case arrayref:
             // ..., array addr a, element index i ==> ..., a[i]
-            addr = data[ST - 2];
+            addr = data.get(ST - 2);
             if (invalidHeapRef(addr))
                 break;
-            index = data[ST - 1];
-            if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+            index = data.get(ST - 1);
+            if (data.get(addr - 2) != -2 || index < 0 || index >= data.get(addr - 1)) {
                 status = failedArrayIndex;
                 break;
             }
-            data[ST - 2] = data[addr + index]; // result element, returned on
+            data.set(ST - 2, data.get(addr + index)); // result element, returned on
                                                // stack
             ST = ST - 1; // pop two args, return one result
             break;
         case arrayupd:
             // ..., array addr a, element index i, new value v ==> ...
             // and a[i] := v
-            addr = data[ST - 3];
+            addr = data.get(ST - 3);
             if (invalidHeapRef(addr))
                 break;
-            index = data[ST - 2];
-            if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1]) {
+            index = data.get(ST - 2);
+            if (data.get(addr - 2) != -2 || index < 0 || index >= data.get(addr - 1)) {
                 status = failedArrayIndex;
                 break;
             }
-            data[addr + index] = data[ST - 1]; // update array element
+            data.set(addr + index, data.get(ST - 1)); // update array element
             ST = ST - 3; // pop 3 args, return no result
             break;
         case fieldref:
             // ..., obj addr a, field index i ==> ..., value of ith field of a
-            addr = data[ST - 2];
+            addr = data.get(ST - 2);
             if (invalidHeapRef(addr))
                 break;
-            index = data[ST - 1];
-            if (index < 0 || index >= data[addr - 1]) {
+            index = data.get(ST - 1);
+            if (index < 0 || index >= data.get(addr - 1)) {
                 status = failedArrayIndex;
                 break;
             }
-            data[ST - 2] = data[addr + index]; // field to stack top
+            data.set(ST - 2, data.get(addr + index)); // field to stack top
             ST = ST - 1; // pop two args, return one result
             break;
         case fieldupd:
             // ..., obj addr a, field index i, new value v ==> ...
             // and a.i := v
-            addr = data[ST - 3];
+            addr = data.get(ST - 3);
             if (invalidHeapRef(addr))
                 break;
-            index = data[ST - 2];
-            if (index < 0 || index >= data[addr - 1]) {
+            index = data.get(ST - 2);
+            if (index < 0 || index >= data.get(addr - 1)) {
                 status = failedArrayIndex;
                 break;
             }
-            data[addr + index] = data[ST - 1]; // update field to new value
+            data.set(addr + index, data.get(ST - 1)); // update field to new value
             ST = ST - 3; // pop 3 args, return no result
             break;
         }
     }
 
-    static void interpretOneOperation() {
+    static long binaryPrimitive(int id, int left, int right) {
+        // Evaluates a side-effect free binary primitive on the given operands,
+        // or returns NOFOLD if the primitive would fail.
+        switch (Machine.intToPrim[id]) {
+        case and:
+            return toInt(isTrue(left) & isTrue(right));
+        case or:
+            return toInt(isTrue(left) | isTrue(right));
+        case add:
+            try {
+                return Math.addExact(left, right);
+            } catch (ArithmeticException e) {
+                return NOFOLD;
+            }
+        case sub:
+            try {
+                return Math.subtractExact(left, right);
+            } catch (ArithmeticException e) {
+                return NOFOLD;
+            }
+        case mult:
+            try {
+                return Math.multiplyExact(left, right);
+            } catch (ArithmeticException e) {
+                return NOFOLD;
+            }
+        case div:
+            return (right != 0) ? left / right : NOFOLD;
+        case mod:
+            return (right != 0) ? left % right : NOFOLD;
+        case lt:
+            return toInt(left < right);
+        case le:
+            return toInt(left <= right);
+        case ge:
+            return toInt(left >= right);
+        case gt:
+            return toInt(left > right);
+        case eq:
+            return toInt(left == right);
+        case ne:
+            return toInt(left != right);
+        default:
+            return NOFOLD;
+        }
+    }
+
+    void interpretOneOperation() {
         // Fetch instruction ...
-        Instruction currentInstr = Machine.code[CP];
+        Instruction currentInstr = code[CP];
         // Decode instruction ...
         int op = currentInstr.op;
         int r = currentInstr.r;
@@ -509,42 +626,42 @@ public class Interpreter {
         case LOAD:
             addr = d + content(r);
             checkSpace(1);
-            data[ST] = data[addr];
+            data.set(ST, data.get(addr));
             ST = ST + 1;
             CP = CP + 1;
             break;
         case LOADA:
             addr = d + content(r);
             checkSpace(1);
-            data[ST] = addr;
+            data.set(ST, addr);
             ST = ST + 1;
             CP = CP + 1;
             break;
         case LOADI:
             ST = ST - 1;
-            addr = data[ST];
+            addr = data.get(ST);
             checkSpace(1);
-            data[ST] = data[addr];
+            data.set(ST, data.get(addr));
             ST = ST + 1;
             CP = CP + 1;
             break;
         case LOADL:
             checkSpace(1);
-            data[ST] = d;
+            data.set(ST, d);
             ST = ST + 1;
             CP = CP + 1;
             break;
         case STORE:
             addr = d + content(r);
             ST = ST - 1;
-            data[addr] = data[ST];
+            data.set(addr, data.get(ST));
             CP = CP + 1;
             break;
         case STOREI:
             ST = ST - 1;
-            addr = data[ST];
+            addr = data.get(ST);
             ST = ST - 1;
-            data[addr] = data[ST];
+            data.set(addr, data.get(ST));
             CP = CP + 1;
             break;
 
@@ -558,10 +675,10 @@ public class Interpreter {
             } else {
                 // static method in code segment, no instance addr on stack
                 checkSpace(3);
-                data[ST] = OB; // save caller OB in callee frame
-                data[ST + 1] = LB; // save caller LB in callee frame (dynamic
+                data.set(ST, OB); // save caller OB in callee frame
+                data.set(ST + 1, LB); // save caller LB in callee frame (dynamic
                                    // link)
-                data[ST + 2] = CP + 1; // save caller return address in callee
+                data.set(ST + 2, CP + 1); // save caller return address in callee
                                        // frame
                 OB = Machine.nullRep; // set callee OB (null since no instance)
                 LB = ST; // set LB = start of callee frame
@@ -574,17 +691,17 @@ public class Interpreter {
             // call instance method
             // arguments on stack, followed by instance address
             addr = d + content(r); // effective address
-            if (addr >= Machine.CT) {
+            if (addr >= CT) {
                 // no instance methods outside of code segment
                 status = failedInvalidInstruction;
                 break;
             }
             // instance address is last arg on stack and is overwritten by frame
             checkSpace(2);
-            temp = data[ST - 1]; // save instance address temporarily
-            data[ST - 1] = OB; // save caller OB in callee frame
-            data[ST] = LB; // save caller LB in callee frame (dynamic link)
-            data[ST + 1] = CP + 1; // save caller return address in callee frame
+            temp = data.get(ST - 1); // save instance address temporarily
+            data.set(ST - 1, OB); // save caller OB in callee frame
+            data.set(ST, LB); // save caller LB in callee frame (dynamic link)
+            data.set(ST + 1, CP + 1); // save caller return address in callee frame
             OB = temp; // set OB for callee
             LB = ST - 1; // set LB = start of callee frame
             ST = ST + 2; // set ST = end of callee frame
@@ -600,11 +717,11 @@ public class Interpreter {
                 break;
             }
             addr = LB - d; // addr of caller args
-            OB = data[LB]; // restore caller OB, LB, CP
-            CP = data[LB + 2];
-            LB = data[LB + 1];
+            OB = data.get(LB); // restore caller OB, LB, CP
+            CP = data.get(LB + 2);
+            LB = data.get(LB + 1);
             if (n == 1)
-                data[addr] = data[ST - 1]; // return value if any
+                data.set(addr, data.get(ST - 1)); // return value if any
             ST = addr + n; // caller stack top
             break;
 
@@ -612,23 +729,31 @@ public class Interpreter {
         // dynamic method dispatch of method with index d (origin 0)
         // arguments on stack, followed by instance addr
         {
-            addr = data[ST - 1]; // instance addr
+            addr = data.get(ST - 1); // instance addr
             if (invalidHeapRef(addr))
                 break;
-            int classDescAddr = data[addr - 2];
-            if (classDescAddr >= ST || classDescAddr <= SB || d >= data[classDescAddr + 1] || d < 0) {
+            int classDescAddr = data.get(addr - 2);
+            InlineCache cache = inlineCaches[CP];
+            int target = classDescAddr < ST ? cache.lookup(classDescAddr) : -1;
+            if (target < 0
+                    && (classDescAddr >= ST || classDescAddr <= SB || d >= data.get(classDescAddr + 1) || d < 0)) {
                 status = failedMethodIndex;
                 break;
             }
             ST = ST - 1;
             checkSpace(3);
-            data[ST] = OB;
-            data[ST + 1] = LB;
-            data[ST + 2] = CP + 1;
+            data.set(ST, OB);
+            data.set(ST + 1, LB);
+            data.set(ST + 2, CP + 1);
             OB = addr;
             LB = ST;
             ST = ST + 3;
-            CP = data[classDescAddr + 2 + n];
+            if (target < 0) {
+                target = data.get(classDescAddr + 2 + n);
+                if (target >= CB && target < CT)
+                    cache.add(classDescAddr, target);
+            }
+            CP = target;
         }
             break;
         case PUSH: // push d elements on stack
@@ -645,11 +770,11 @@ public class Interpreter {
             break;
         case JUMPI:
             ST = ST - 1;
-            CP = data[ST];
+            CP = data.get(ST);
             break;
         case JUMPIF:
             ST = ST - 1;
-            if (data[ST] == n)
+            if (data.get(ST) == n)
                 CP = d + content(r);
             else
                 CP = CP + 1;
@@ -666,45 +791,641 @@ public class Interpreter {
 
         if ((CP < CB) || (CP >= CT))
             status = failedInvalidCodeAddress;
+    }
 
-        if (breakpoints.indexOf(CP) != -1) {
+    void debugOneOperation() {
+        // Executes one instruction on behalf of the debugger, pausing if it
+        // reaches a breakpoint. Only the debugger pays for breakpoint checks.
+        interpretOneOperation();
+        flushOutput();
+
+        if (CP >= 0 && breakpoints.get(CP)) {
             debuggerStatus = DebuggerStatus.PAUSED;
             System.out.println("Breakpoint hit: " + sourceLines.get(CP));
         }
     }
 
-    static void initMachine() {
+    void initMachine() {
         // Initialize registers ...
         ST = SB;
         HT = HB;
         LB = SB;
         CP = CB;
         OB = -1; // invalid instance addr
-        CT = Machine.CT;
         status = running;
+        dispatches = instructions = 0;
+        deadline = System.nanoTime() + timeLimit;
+        collector.reset();
+        if (allocations != null)
+            allocations.reset();
+        snapshot = null;
+        for (InlineCache cache : inlineCaches) {
+            if (cache != null)
+                cache.clear();
+        }
     }
 
-    static void interpretProgram() {
+    void interpretProgram() {
         // Runs the program in code store.
         initMachine();
+        if (profiler != null) {
+            // profiled runs are interpreted from start to end
+            profiler.start();
+            runDecoded(profiler.decoded);
+            profiler.finish();
+        } else if (tiered) {
+            if (tiers == null)
+                tiers = new Tiers(code, CT, invocationThreshold, backEdgeThreshold);
+            runTiered();
+        } else
+            runDecoded(decoded);
+        flushOutput();
+        if (snapshotting)
+            snapshot = collector.snapshot(CP);
+    }
+
+    void runTiered() {
+        // Runs the profiled decoding until it arrives at a hot site or at an
+        // address where compiled code can be entered, and runs compiled code
+        // from there, promoting the site first if necessary. Instructions
+        // that compiled code hands back are interpreted on their own.
+        final Translator translator = tiers.translator;
+        while (status == running) {
+            if (timeUp()) {
+                status = failedTimeLimit;
+                break;
+            }
+            if (CP < CB || CP >= CT) {
+                status = failedInvalidCodeAddress;
+                break;
+            }
+            Translator.Compiled compiled = translator.entry(CP);
+            if (compiled == null) {
+                if (tiers.profiled.hot(CP))
+                    compiled = tiers.promote(CP);
+                if (compiled == null) {
+                    runDecoded(tiers.profiled);
+                    continue;
+                }
+            }
+            tiers.entries++;
+            dispatches++;
+            instructions = -1;
+            if (!compiled.execute(this))
+                continue;
+            tiers.bailouts++;
+            int from = CP;
+            interpretOneOperation();
+            dispatches++;
+            tiers.executed(from, CP);
+        }
+    }
+
+    /**
+     * @return true if the run has a time limit and it has expired
+     */
+    boolean timeUp() {
+        return timeLimit > 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    void stepProgram() {
+        // Runs the program in code store one Instruction at a time, without
+        // pre-decoding.
+        initMachine();
+        long count = 0;
         do {
             interpretOneOperation();
+            count++;
         } while (status == running);
+        dispatches = instructions = count;
+        flushOutput();
     }
 
-    static void runProgramFromStart() {
+    void runDecoded(Decoder decoded) {
+        // Executes the pre-decoded instruction stream from CP until the
+        // machine stops running. Registers are cached in locals and written
+        // back whenever control leaves the loop.
+        //
+        // Every case that completes an instruction ends with continue. A case
+        // that breaks out of the switch hands the instruction at cp over to
+        // interpretOneOperation instead: GENERIC instructions always do so,
+        // and superinstructions do so whenever one of their components would
+        // not complete normally, so that failures are reported with exactly
+        // the same machine state as without fusion.
+        //
+        // Stack checks compare against ht rather than HT. In verified code,
+        // ht is raised to Integer.MAX_VALUE while the current frame, up to
+        // top, is known to fit below HT: on entry to a method whose frame
+        // fits, and on return to a frame whose height matches the verifier's.
+        // It drops back to HT on calls and returns that do not pass these
+        // checks, and after primitives and GENERIC instructions if the heap
+        // has grown into the frame.
+        //
+        // With a time limit, the clock is read every POLL_INTERVAL dispatches.
+        final int[] op = decoded.op, n = decoded.n, d = decoded.d;
+        final int[] counts = decoded.counts, limits = decoded.limits;
+        final boolean calls = decoded.callLimit >= 0;
+        final InlineCache[] caches = inlineCaches;
+        final DataStore data = this.data;
+        final int ct = decoded.CT;
+        final Verifier verified = decoded.verified;
+        final int[] frames = (verified != null) ? verified.frames : null;
+        final int[] offsets = (verified != null) ? verified.offsets : null;
+        final int[] reaches = (verified != null) ? verified.reaches : null;
+        final Profiler profiler = decoded.profiler;
+        final long[] hits = (profiler != null) ? profiler.hits : null;
+        int cp = CP, st = ST, lb = LB, ob = OB;
+        int ht = HT, top = 0;
+        int addr;
+        // instructions executed by superinstructions, beyond one per dispatch
+        long result, count = 0, fused = 0;
+        long poll = (timeLimit > 0) ? POLL_INTERVAL : Long.MAX_VALUE;
+
+        if (offsets != null && cp >= CB && cp < ct && lb >= SB && st - lb == offsets[cp] && lb + reaches[cp] <= HT) {
+            top = lb + reaches[cp];
+            ht = Integer.MAX_VALUE;
+        }
+        if (profiler != null)
+            profiler.resume();
+
+        while (status == running) {
+            if (count == poll) {
+                if (System.nanoTime() - deadline >= 0) {
+                    status = failedTimeLimit;
+                    break;
+                }
+                poll += POLL_INTERVAL;
+            }
+            count++;
+            if (hits != null)
+                hits[cp]++;
+            switch (op[cp]) {
+            case Decoder.LOAD:
+                if (ht - st < 1)
+                    status = failedDataStoreFull;
+                data.set(st++, data.get(d[cp]));
+                cp++;
+                continue;
+            case Decoder.LOAD_LB:
+                if (ht - st < 1)
+                    status = failedDataStoreFull;
+                data.set(st++, data.get(d[cp] + lb));
+                cp++;
+                continue;
+            case Decoder.LOAD_OB:
+                if (ht - st < 1)
+                    status = failedDataStoreFull;
+                data.set(st++, data.get(d[cp] + ob));
+                cp++;
+                continue;
+            case Decoder.LOADA:
+                if (ht - st < 1)
+                    status = failedDataStoreFull;
+                data.set(st++, d[cp]);
+                cp++;
+                continue;
+            case Decoder.LOADA_LB:
+                if (ht - st < 1)
+                    status = failedDataStoreFull;
+                data.set(st++, d[cp] + lb);
+                cp++;
+                continue;
+            case Decoder.LOADA_OB:
+                if (ht - st < 1)
+                    status = failedDataStoreFull;
+                data.set(st++, d[cp] + ob);
+                cp++;
+                continue;
+            case Decoder.LOADI:
+                addr = data.get(st - 1);
+                if (ht - st < 0)
+                    status = failedDataStoreFull;
+                data.set(st - 1, data.get(addr));
+                cp++;
+                continue;
+            case Decoder.LOADL:
+                if (ht - st < 1)
+                    status = failedDataStoreFull;
+                data.set(st++, d[cp]);
+                cp++;
+                continue;
+            case Decoder.STORE:
+                data.set(d[cp], data.get(--st));
+                cp++;
+                continue;
+            case Decoder.STORE_LB:
+                data.set(d[cp] + lb, data.get(--st));
+                cp++;
+                continue;
+            case Decoder.STORE_OB:
+                data.set(d[cp] + ob, data.get(--st));
+                cp++;
+                continue;
+            case Decoder.STOREI:
+                addr = data.get(st - 1);
+                data.set(addr, data.get(st - 2));
+                st = st - 2;
+                cp++;
+                continue;
+            case Decoder.CALL:
+                // static method in code segment, no instance addr on stack
+                if (frames != null) {
+                    top = st + frames[d[cp]];
+                    ht = (st >= SB && top <= HT) ? Integer.MAX_VALUE : HT;
+                }
+                if (ht - st < 3)
+                    status = failedDataStoreFull;
+                data.set(st, ob);
+                data.set(st + 1, lb);
+                data.set(st + 2, cp + 1);
+                ob = Machine.nullRep;
+                lb = st;
+                st = st + 3;
+                cp = d[cp];
+                if (profiler != null)
+                    profiler.enter(cp, count);
+                continue;
+            case Decoder.CALLPRIM:
+                // OB is a root for the collector, CP the allocation site
+                CP = cp;
+                ST = st;
+                OB = ob;
+                callPrimitive(d[cp]);
+                st = ST;
+                if (ht != Integer.MAX_VALUE || top > HT)
+                    ht = HT;
+                cp++;
+                continue;
+            case Decoder.CALLI:
+                // instance address is last arg on stack and is overwritten by
+                // frame
+                if (frames != null) {
+                    top = st - 1 + frames[d[cp]];
+                    ht = (st - 1 >= SB && top <= HT) ? Integer.MAX_VALUE : HT;
+                }
+                if (ht - st < 2)
+                    status = failedDataStoreFull;
+                addr = data.get(st - 1);
+                data.set(st - 1, ob);
+                data.set(st, lb);
+                data.set(st + 1, cp + 1);
+                ob = addr;
+                lb = st - 1;
+                st = st + 2;
+                cp = d[cp];
+                if (profiler != null)
+                    profiler.enter(cp, count);
+                continue;
+            case Decoder.CALLD: {
+                addr = data.get(st - 1);
+                if (invalidHeapRef(addr))
+                    continue;
+                int classDescAddr = data.get(addr - 2);
+                InlineCache cache = caches[cp];
+                int target = classDescAddr < st ? cache.lookup(classDescAddr) : -1;
+                if (target < 0 && (classDescAddr >= st || classDescAddr <= SB || d[cp] >= data.get(classDescAddr + 1)
+                        || d[cp] < 0)) {
+                    status = failedMethodIndex;
+                    continue;
+                }
+                st = st - 1;
+                if (ht - st < 3)
+                    status = failedDataStoreFull;
+                data.set(st, ob);
+                data.set(st + 1, lb);
+                data.set(st + 2, cp + 1);
+                ob = addr;
+                lb = st;
+                st = st + 3;
+                if (target >= 0) {
+                    cp = target;
+                    if (profiler != null)
+                        profiler.enter(cp, count);
+                    continue;
+                }
+                cp = data.get(classDescAddr + 2 + n[cp]);
+                if (cp < CB || cp >= ct)
+                    status = failedInvalidCodeAddress;
+                else {
+                    cache.add(classDescAddr, cp);
+                    if (calls)
+                        decoded.called(cp);
+                    if (profiler != null)
+                        profiler.enter(cp, count);
+                }
+                continue;
+            }
+            case Decoder.RETURN: {
+                if (profiler != null)
+                    profiler.leave(count);
+                int size = n[cp];
+                addr = lb - d[cp];
+                ob = data.get(lb);
+                cp = data.get(lb + 2);
+                lb = data.get(lb + 1);
+                if (size == 1)
+                    data.set(addr, data.get(st - 1));
+                st = addr + size;
+                if (cp < CB || cp >= ct)
+                    status = failedInvalidCodeAddress;
+                else if (offsets != null) {
+                    if (lb >= SB && st - lb == offsets[cp] && lb + reaches[cp] <= HT) {
+                        top = lb + reaches[cp];
+                        ht = Integer.MAX_VALUE;
+                    } else
+                        ht = HT;
+                }
+                continue;
+            }
+            case Decoder.PUSH:
+                if (ht - st < d[cp])
+                    status = failedDataStoreFull;
+                st = st + d[cp];
+                cp++;
+                continue;
+            case Decoder.POP:
+                st = st - d[cp];
+                cp++;
+                continue;
+            case Decoder.JUMP:
+                cp = d[cp];
+                continue;
+            case Decoder.JUMPI:
+                cp = data.get(--st);
+                if (cp < CB || cp >= ct)
+                    status = failedInvalidCodeAddress;
+                continue;
+            case Decoder.JUMPIF:
+                if (data.get(--st) == n[cp])
+                    cp = d[cp];
+                else
+                    cp++;
+                continue;
+            case Decoder.HALT:
+                if (n[cp] > 0) {
+                    CP = cp;
+                    ST = st;
+                    LB = lb;
+                    OB = ob;
+                    dump();
+                    cp++;
+                } else
+                    status = halted;
+                continue;
+            case Decoder.END:
+                status = failedInvalidCodeAddress;
+                continue;
+            case Decoder.COUNT:
+                if (counts[cp] < limits[cp]) {
+                    counts[cp]++;
+                    break;
+                }
+                // hot site, leave it to the caller
+                CP = cp;
+                ST = st;
+                LB = lb;
+                OB = ob;
+                dispatches += count;
+                if (instructions >= 0)
+                    instructions += count + fused;
+                return;
+
+            // inlined primitives; a primitive that fails is left to
+            // callPrimitive
+            case Decoder.NOT:
+                data.set(st - 1, toInt(!isTrue(data.get(st - 1))));
+                cp++;
+                continue;
+            case Decoder.AND:
+                st--;
+                data.set(st - 1, toInt(isTrue(data.get(st - 1)) & isTrue(data.get(st))));
+                cp++;
+                continue;
+            case Decoder.OR:
+                st--;
+                data.set(st - 1, toInt(isTrue(data.get(st - 1)) | isTrue(data.get(st))));
+                cp++;
+                continue;
+            case Decoder.SUCC:
+                // int arithmetic, as in callPrimitive: succ, pred and neg wrap
+                data.set(st - 1, data.get(st - 1) + 1);
+                cp++;
+                continue;
+            case Decoder.PRED:
+                data.set(st - 1, data.get(st - 1) - 1);
+                cp++;
+                continue;
+            case Decoder.NEG:
+                data.set(st - 1, -data.get(st - 1));
+                cp++;
+                continue;
+            case Decoder.ADD:
+                try {
+                    data.set(st - 2, Math.addExact(data.get(st - 2), data.get(st - 1)));
+                } catch (ArithmeticException e) {
+                    break;
+                }
+                st--;
+                cp++;
+                continue;
+            case Decoder.SUB:
+                try {
+                    data.set(st - 2, Math.subtractExact(data.get(st - 2), data.get(st - 1)));
+                } catch (ArithmeticException e) {
+                    break;
+                }
+                st--;
+                cp++;
+                continue;
+            case Decoder.MULT:
+                try {
+                    data.set(st - 2, Math.multiplyExact(data.get(st - 2), data.get(st - 1)));
+                } catch (ArithmeticException e) {
+                    break;
+                }
+                st--;
+                cp++;
+                continue;
+            case Decoder.DIV:
+                if (data.get(st - 1) == 0)
+                    break;
+                st--;
+                data.set(st - 1, data.get(st - 1) / data.get(st));
+                cp++;
+                continue;
+            case Decoder.MOD:
+                if (data.get(st - 1) == 0)
+                    break;
+                st--;
+                data.set(st - 1, data.get(st - 1) % data.get(st));
+                cp++;
+                continue;
+            case Decoder.LT:
+                st--;
+                data.set(st - 1, toInt(data.get(st - 1) < data.get(st)));
+                cp++;
+                continue;
+            case Decoder.LE:
+                st--;
+                data.set(st - 1, toInt(data.get(st - 1) <= data.get(st)));
+                cp++;
+                continue;
+            case Decoder.GE:
+                st--;
+                data.set(st - 1, toInt(data.get(st - 1) >= data.get(st)));
+                cp++;
+                continue;
+            case Decoder.GT:
+                st--;
+                data.set(st - 1, toInt(data.get(st - 1) > data.get(st)));
+                cp++;
+                continue;
+            case Decoder.EQ:
+                st--;
+                data.set(st - 1, toInt(data.get(st - 1) == data.get(st)));
+                cp++;
+                continue;
+            case Decoder.NE:
+                st--;
+                data.set(st - 1, toInt(data.get(st - 1) != data.get(st)));
+                cp++;
+                continue;
+
+            // superinstructions
+            case Decoder.LL_PRIM:
+                // LOAD a[LB]; LOAD b[LB]; CALL prim[PB]
+                if (ht - st < 2)
+                    break;
+                result = binaryPrimitive(d[cp + 2], data.get(d[cp] + lb), data.get(d[cp + 1] + lb));
+                if (result == NOFOLD)
+                    break;
+                data.set(st++, (int) result);
+                fused += 2;
+                cp += 3;
+                continue;
+            case Decoder.LK_PRIM:
+                // LOAD a[LB]; LOADL k; CALL prim[PB]
+                if (ht - st < 2)
+                    break;
+                result = binaryPrimitive(d[cp + 2], data.get(d[cp] + lb), d[cp + 1]);
+                if (result == NOFOLD)
+                    break;
+                data.set(st++, (int) result);
+                fused += 2;
+                cp += 3;
+                continue;
+            case Decoder.K_PRIM:
+                // LOADL k; CALL prim[PB]
+                if (ht - st < 1)
+                    break;
+                result = binaryPrimitive(d[cp + 1], data.get(st - 1), d[cp]);
+                if (result == NOFOLD)
+                    break;
+                data.set(st - 1, (int) result);
+                fused += 1;
+                cp += 2;
+                continue;
+            case Decoder.LK_PRIM_STORE:
+                // LOAD a[LB]; LOADL k; CALL prim[PB]; STORE b[LB]
+                if (ht - st < 2)
+                    break;
+                result = binaryPrimitive(d[cp + 2], data.get(d[cp] + lb), d[cp + 1]);
+                if (result == NOFOLD)
+                    break;
+                data.set(d[cp + 3] + lb, (int) result);
+                fused += 3;
+                cp += 4;
+                continue;
+            case Decoder.PRIM_JUMPIF:
+                // CALL prim[PB]; JUMPIF (n) t
+                result = binaryPrimitive(d[cp], data.get(st - 2), data.get(st - 1));
+                st = st - 2;
+                fused += 1;
+                cp = (result == n[cp + 1]) ? d[cp + 1] : cp + 2;
+                continue;
+            case Decoder.K_PRIM_JUMPIF:
+                // LOADL k; CALL prim[PB]; JUMPIF (n) t
+                if (ht - st < 1)
+                    break;
+                result = binaryPrimitive(d[cp + 1], data.get(--st), d[cp]);
+                fused += 2;
+                cp = (result == n[cp + 2]) ? d[cp + 2] : cp + 3;
+                continue;
+            case Decoder.LK_PRIM_JUMPIF:
+                // LOAD a[LB]; LOADL k; CALL prim[PB]; JUMPIF (n) t
+                if (ht - st < 2)
+                    break;
+                result = binaryPrimitive(d[cp + 2], data.get(d[cp] + lb), d[cp + 1]);
+                fused += 3;
+                cp = (result == n[cp + 3]) ? d[cp + 3] : cp + 4;
+                continue;
+            case Decoder.LL_PRIM_JUMPIF:
+                // LOAD a[LB]; LOAD b[LB]; CALL prim[PB]; JUMPIF (n) t
+                if (ht - st < 2)
+                    break;
+                result = binaryPrimitive(d[cp + 2], data.get(d[cp] + lb), data.get(d[cp + 1] + lb));
+                fused += 3;
+                cp = (result == n[cp + 3]) ? d[cp + 3] : cp + 4;
+                continue;
+            case Decoder.ARRAY_LENGTH:
+                // LOADL 1; CALL sub[PB]; LOADI
+                addr = data.get(st - 1);
+                if (ht - st < 1 || addr == Integer.MIN_VALUE)
+                    break;
+                data.set(st - 1, data.get(addr - 1));
+                fused += 2;
+                cp += 3;
+                continue;
+            }
+
+            // GENERIC, or a superinstruction that must be executed stepwise
+            CP = cp;
+            ST = st;
+            LB = lb;
+            OB = ob;
+            interpretOneOperation();
+            if (profiler != null && LB != lb) {
+                // a call or return
+                if (code[cp].op == Machine.Op.RETURN.ordinal())
+                    profiler.leave(count);
+                else
+                    profiler.enter(CP, count);
+            }
+            cp = CP;
+            st = ST;
+            lb = LB;
+            ob = OB;
+            if (ht != Integer.MAX_VALUE || top > HT)
+                ht = HT;
+        }
+
+        CP = cp;
+        ST = st;
+        LB = lb;
+        OB = ob;
+        dispatches += count;
+        if (instructions >= 0)
+            instructions += count + fused;
+        if (profiler != null)
+            profiler.attribute(count);
+    }
+
+    void runProgramFromStart() {
         initMachine();
         continueProgram();
     }
 
-    static void continueProgram() {
+    void continueProgram() {
         debuggerStatus = DebuggerStatus.RUNNING;
+        long count = 0;
         do {
-            interpretOneOperation();
+            debugOneOperation();
+            count++;
         } while (status == running && debuggerStatus == DebuggerStatus.RUNNING);
+        dispatches = instructions = count;
     }
 
-    static void printHelp() {
+    void printHelp() {
         String[] help = { "p or print:", "     print entire machine state", "l or list [offset] [size]:",
                 "     print the instructions around CP + offset, with size lines on either side",
                 "     offset = 0 and size = 2 by default", "b or break [address]:", "     set a breakpoint at address",
@@ -712,7 +1433,8 @@ public class Interpreter {
                 "     execute one instruction", "c or continue:",
                 "     continue running the program from current position, until next breakpoint or completion",
                 "r or run:", "     run the program from start, until next breakpoint or completion", "i or info:",
-                "     list the current breakpoints", "q, quit or <EOF>:", "     quit the debugger",
+                "     list the current breakpoints", "heap:", "     print a snapshot of the heap",
+                "q, quit or <EOF>:", "     quit the debugger",
                 "Simply press enter to repeat the last command", "? or help:", "     print this help" };
 
         for (String line : help) {
@@ -720,7 +1442,7 @@ public class Interpreter {
         }
     }
 
-    static void debugProgram() {
+    void debugProgram() {
         initMachine();
 
         BufferedReader inputReader = new BufferedReader(new InputStreamReader(System.in));
@@ -761,21 +1483,21 @@ public class Interpreter {
                 }
             } else if (command.equalsIgnoreCase("b") || command.equalsIgnoreCase("break")) {
                 int addr = scanner.hasNextInt() ? scanner.nextInt() : CP;
-                if (!breakpoints.contains(addr))
-                    breakpoints.add(addr);
+                if (addr >= 0)
+                    breakpoints.set(addr);
                 System.out.println("Added breakpoint at " + sourceLines.get(addr));
             } else if (command.equalsIgnoreCase("del")) {
                 while (scanner.hasNextInt()) {
-                    int addr = scanner.nextInt(), idx = breakpoints.indexOf(addr);
-                    if (idx != -1) {
-                        breakpoints.remove(idx);
+                    int addr = scanner.nextInt();
+                    if (addr >= 0 && breakpoints.get(addr)) {
+                        breakpoints.clear(addr);
                     } else {
                         System.out.println("No breakpoint at " + addr);
                     }
                 }
             } else if (command.equalsIgnoreCase("n") || command.equalsIgnoreCase("next")) {
                 if (status == running) {
-                    interpretOneOperation();
+                    debugOneOperation();
                 } else {
                     System.out.println("Program is not running");
                 }
@@ -785,9 +1507,12 @@ public class Interpreter {
                 runProgramFromStart();
             } else if (command.equalsIgnoreCase("i") || command.equalsIgnoreCase("info")) {
                 System.out.println("Breakpoints:");
-                for (int b : breakpoints) {
+                for (int b = breakpoints.nextSetBit(0); b >= 0; b = breakpoints.nextSetBit(b + 1)) {
                     System.out.println("\t" + sourceLines.get(b));
                 }
+            } else if (command.equalsIgnoreCase("heap")) {
+                HeapSnapshot heap = collector.snapshot(CP);
+                System.out.print((heap != null) ? heap : "Heap cannot be walked after alloc\n");
             } else if (command.equalsIgnoreCase("q") || command.equalsIgnoreCase("quit")) {
                 scanner.close();
                 return;
@@ -798,45 +1523,482 @@ public class Interpreter {
         }
     }
 
-    // RUNNING
+    // LOADING AND RUNNING
+
+    /**
+     * Loads the program in an object file into the code store
+     * 
+     * @param objectFileName
+     *            object file
+     * @return true if the object file cannot be read
+     */
+    public synchronized boolean load(String objectFileName) {
+        Instruction[] objectCode = new ObjectFile(objectFileName).load();
+        if (objectCode == null)
+            return true;
+        install(objectCode);
+        return false;
+    }
+
+    /**
+     * Loads the program in the contents of an object file
+     * 
+     * @return true if objectCode is not valid object code
+     */
+    public synchronized boolean load(byte[] objectCode) {
+        return load(ByteBuffer.wrap(objectCode));
+    }
+
+    /**
+     * Loads the program in the contents of an object file, from the position
+     * to the limit of the buffer. The position of the buffer is unchanged.
+     * 
+     * @return true if objectCode is not valid object code
+     */
+    public synchronized boolean load(ByteBuffer objectCode) {
+        Instruction[] code = ObjectFile.decode(objectCode);
+        if (code == null)
+            return true;
+        install(code);
+        return false;
+    }
+
+    /**
+     * Loads code[CB..CT-1] into the code store and pre-decodes it. The
+     * instructions are copied, so the caller is free to reuse code afterwards
+     * (e.g. Machine.code during code generation).
+     * 
+     * @param code
+     *            instructions to load
+     * @param CT
+     *            code top
+     */
+    public synchronized void load(Instruction[] code, int CT) {
+        Instruction[] copy = new Instruction[CT];
+        for (int addr = CB; addr < CT; addr++) {
+            Instruction instr = code[addr];
+            copy[addr] = new Instruction(instr.op, instr.n, instr.r, instr.d);
+        }
+        install(copy);
+    }
+
+    /**
+     * Makes code, which nobody else refers to, the code store and pre-decodes
+     * it
+     */
+    private void install(Instruction[] code) {
+        this.code = code;
+        this.CT = code.length;
+        decoded = new Decoder(this.code, CT);
+        verifier = new Verifier(this.code, CT);
+        if (!verifier.verify() && verifying)
+            decoded.verified = verifier;
+        inlineCaches = new InlineCache[CT];
+        for (int addr = CB; addr < CT; addr++) {
+            if (this.code[addr].op == Machine.Op.CALLD.ordinal())
+                inlineCaches[addr] = new InlineCache();
+        }
+        tiers = null;
+        profiler = profiling ? new Profiler(this.code, CT, decoded.verified) : null;
+        allocations = profilingAllocations ? new AllocationProfiler(CT) : null;
+        snapshot = null;
+        status = halted;
+    }
+
+    /**
+     * Runs the loaded program from the start
+     * 
+     * @return final machine status (halted, or one of the failed statuses)
+     */
+    public synchronized int run() {
+        interpretProgram();
+        return status;
+    }
+
+    /**
+     * Runs the loaded program from the start, without reporting its status
+     * on System.out
+     * 
+     * @return how the run ended, the values printed by putintnl, and the
+     *         number of instructions executed and time taken
+     */
+    public synchronized Result execute() {
+        values = new int[16];
+        valueCount = 0;
+        try {
+            long start = System.nanoTime();
+            interpretProgram();
+            long elapsed = System.nanoTime() - start;
+            return new Result(Status.of(status), CP, Arrays.copyOf(values, valueCount), instructions, elapsed);
+        } finally {
+            values = null;
+        }
+    }
+
+    /**
+     * Runs a program in a machine of its own, with the default data store
+     * size
+     * 
+     * @param objectCode
+     *            the contents of an object file
+     * @param in
+     *            input of the get primitives
+     * @param out
+     *            output of the put primitives
+     * @return the outcome of the run
+     * @throws IllegalArgumentException
+     *             if objectCode is not valid object code
+     */
+    public static Result execute(byte[] objectCode, InputStream in, OutputStream out) {
+        Interpreter interpreter = new Interpreter();
+        if (interpreter.load(objectCode))
+            throw new IllegalArgumentException("invalid object code");
+        interpreter.setInput(new InputSource(in));
+        interpreter.setOutput(new OutputSink(out));
+        interpreter.setConsole(new PrintStream(out, true));
+        return interpreter.execute();
+    }
+
+    /**
+     * Selects whether run() translates methods into JVM bytecode the first
+     * time they are called, or interprets the whole program. Compiling is
+     * tiering with both thresholds 0.
+     */
+    public synchronized void setCompiling(boolean compiling) {
+        if (compiling)
+            setTiering(0, 0);
+        else
+            tiered = false;
+    }
+
+    /**
+     * Makes run() profile the program and translate methods into JVM bytecode
+     * once they have been invoked invocationThreshold times, and loops once
+     * they have iterated backEdgeThreshold times. Profiles collected with
+     * other thresholds are discarded.
+     */
+    public synchronized void setTiering(int invocationThreshold, int backEdgeThreshold) {
+        if (invocationThreshold < 0 || backEdgeThreshold < 0)
+            throw new IllegalArgumentException("thresholds must not be negative");
+        if (tiers != null
+                && (invocationThreshold != this.invocationThreshold || backEdgeThreshold != this.backEdgeThreshold))
+            tiers = null;
+        this.invocationThreshold = invocationThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        tiered = true;
+    }
+
+    /**
+     * @return the profiles and tier transitions of the loaded program, or
+     *         null if it has not been run with tiering
+     */
+    public synchronized Tiers getTiers() {
+        return tiers;
+    }
+
+    /**
+     * Limits the time that each run may take. A run that exceeds it ends
+     * with status failedTimeLimit, once the interpreter notices: within
+     * POLL_INTERVAL instructions, or in compiled code within POLL_INTERVAL
+     * backward branches.
+     * 
+     * @param millis
+     *            the limit in milliseconds, or 0 for none
+     */
+    public synchronized void setTimeLimit(long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("negative time limit");
+        timeLimit = millis * 1000000;
+    }
+
+    /**
+     * Selects whether programs that pass verification run with a stack check
+     * per call instead of per push. Their behaviour is the same either way.
+     */
+    public synchronized void setVerifying(boolean verifying) {
+        this.verifying = verifying;
+        if (decoded != null)
+            decoded.verified = (verifying && verifier.getError() == null) ? verifier : null;
+        if (profiler != null)
+            profiler.decoded.verified = decoded.verified;
+    }
+
+    /**
+     * Selects whether run() records an execution profile of the program (see
+     * getProfiler). Profiled runs are interpreted, even with compiling or
+     * tiering selected, and without superinstructions.
+     */
+    public synchronized void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+        if (!profiling)
+            profiler = null;
+        else if (profiler == null && decoded != null)
+            profiler = new Profiler(code, CT, decoded.verified);
+    }
+
+    /**
+     * @return the profile of the last run of the loaded program, or null if
+     *         runs are not profiled
+     */
+    public synchronized Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @return the verification of the loaded program, or null if no program
+     *         has been loaded
+     */
+    public synchronized Verifier getVerifier() {
+        return verifier;
+    }
+
+    /**
+     * Selects whether run() counts the heap allocations of the program by
+     * class and by site (see getAllocationProfiler)
+     */
+    public synchronized void setAllocationProfiling(boolean profiling) {
+        profilingAllocations = profiling;
+        if (!profiling)
+            allocations = null;
+        else if (allocations == null && code != null)
+            allocations = new AllocationProfiler(CT);
+    }
+
+    /**
+     * @return the allocations of the last run, or null if they are not
+     *         profiled
+     */
+    public synchronized AllocationProfiler getAllocationProfiler() {
+        return allocations;
+    }
+
+    /**
+     * Selects whether run() takes a snapshot of the heap when the program
+     * halts or fails (see getSnapshot)
+     */
+    public synchronized void setSnapshotting(boolean snapshotting) {
+        this.snapshotting = snapshotting;
+    }
+
+    /**
+     * @return the heap at the end of the last run, or null if no snapshot was
+     *         taken or the heap could not be walked
+     */
+    public synchronized HeapSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return a snapshot of the heap in the current machine state, or null if
+     *         the heap cannot be walked because the program has used the
+     *         alloc primitive
+     */
+    public synchronized HeapSnapshot takeSnapshot() {
+        return collector.snapshot(CP);
+    }
+
+    /**
+     * Redirects the output of the put primitives, which goes to System.out
+     * by default
+     */
+    public synchronized void setOutput(OutputSink output) {
+        if (output == null)
+            throw new IllegalArgumentException("no output sink");
+        this.output = output;
+        input.output = output;
+    }
+
+    /**
+     * Redirects the machine state dumps of HALT and of failures, and the
+     * status messages, which go to System.out by default
+     */
+    public synchronized void setConsole(PrintStream console) {
+        if (console == null)
+            throw new IllegalArgumentException("no console stream");
+        this.console = console;
+    }
+
+    /**
+     * Redirects the input of the get primitives, which comes from System.in
+     * by default
+     */
+    public synchronized void setInput(InputSource input) {
+        if (input == null)
+            throw new IllegalArgumentException("no input source");
+        this.input = input;
+        input.output = output;
+    }
 
+    /**
+     * @return the heap collector, with the statistics of the last run
+     */
+    public Collector getCollector() {
+        return collector;
+    }
+
+    /**
+     * @return the inline cache of the CALLD instruction at addr, with the
+     *         statistics of the last run, or null if there is none
+     */
+    public InlineCache getInlineCache(int addr) {
+        if (inlineCaches == null || addr < CB || addr >= inlineCaches.length)
+            return null;
+        return inlineCaches[addr];
+    }
+
+    /**
+     * @return machine status after the last run
+     */
+    public synchronized int getStatus() {
+        return status;
+    }
+
+    // usage: java mJAM.Interpreter [-stack words] [-heap words] [-offheap]
+    // [-nogc] [-gcstats] [-jit | -tiered [-callthreshold n] [-loopthreshold n]]
+    // [-tierstats] [-icstats] [-noverify] [-verifystats] [-profile] [-stacks file]
+    // [-allocprofile] [-heapsnapshot file] [-timeout millis] [objectFile [sourceFile]]
     public static void main(String[] args) {
         System.out.println("********** mJAM Interpreter (Version 1.2) **********");
 
-        String objectFileName;
-        if (args.length >= 1)
-            objectFileName = args[0];
-        else
-            objectFileName = "obj.mJAM";
-
-        String sourceFileName;
-        if (args.length >= 2) {
-            sourceFileName = args[1];
-            debug(objectFileName, sourceFileName);
-        } else {
-            interpret(objectFileName);
+        int stackSize = DEFAULT_STACK_SIZE, heapSize = DEFAULT_HEAP_SIZE;
+        boolean offHeap = false, collect = true, gcStats = false, compile = false, tier = false, tierStats = false,
+                icStats = false, verify = true, verifyStats = false, profile = false, allocProfile = false;
+        String stacksFileName = null, snapshotFileName = null;
+        int callThreshold = Tiers.DEFAULT_INVOCATION_THRESHOLD, loopThreshold = Tiers.DEFAULT_BACK_EDGE_THRESHOLD;
+        long timeout = 0;
+        int arg = 0;
+        try {
+            for (; arg < args.length && args[arg].startsWith("-"); arg++) {
+                if (args[arg].equals("-stack") && arg + 1 < args.length)
+                    stackSize = Integer.parseInt(args[++arg]);
+                else if (args[arg].equals("-heap") && arg + 1 < args.length)
+                    heapSize = Integer.parseInt(args[++arg]);
+                else if (args[arg].equals("-offheap"))
+                    offHeap = true;
+                else if (args[arg].equals("-nogc"))
+                    collect = false;
+                else if (args[arg].equals("-gcstats"))
+                    gcStats = true;
+                else if (args[arg].equals("-jit"))
+                    compile = true;
+                else if (args[arg].equals("-tiered"))
+                    tier = true;
+                else if (args[arg].equals("-callthreshold") && arg + 1 < args.length)
+                    callThreshold = Integer.parseInt(args[++arg]);
+                else if (args[arg].equals("-loopthreshold") && arg + 1 < args.length)
+                    loopThreshold = Integer.parseInt(args[++arg]);
+                else if (args[arg].equals("-tierstats"))
+                    tierStats = true;
+                else if (args[arg].equals("-icstats"))
+                    icStats = true;
+                else if (args[arg].equals("-noverify"))
+                    verify = false;
+                else if (args[arg].equals("-verifystats"))
+                    verifyStats = true;
+                else if (args[arg].equals("-profile"))
+                    profile = true;
+                else if (args[arg].equals("-stacks") && arg + 1 < args.length)
+                    stacksFileName = args[++arg];
+                else if (args[arg].equals("-allocprofile"))
+                    allocProfile = true;
+                else if (args[arg].equals("-heapsnapshot") && arg + 1 < args.length)
+                    snapshotFileName = args[++arg];
+                else if (args[arg].equals("-timeout") && arg + 1 < args.length)
+                    timeout = Long.parseLong(args[++arg]);
+                else
+                    throw new IllegalArgumentException("unknown option " + args[arg]);
+            }
+            Interpreter interpreter = new Interpreter(stackSize, heapSize, offHeap);
+            interpreter.collector.setEnabled(collect);
+            interpreter.setVerifying(verify);
+            interpreter.setProfiling(profile || stacksFileName != null);
+            interpreter.setAllocationProfiling(allocProfile);
+            interpreter.setSnapshotting(snapshotFileName != null);
+            interpreter.setTimeLimit(timeout);
+            if (compile)
+                interpreter.setCompiling(true);
+            else if (tier)
+                interpreter.setTiering(callThreshold, loopThreshold);
+
+            String objectFileName;
+            if (args.length >= arg + 1)
+                objectFileName = args[arg];
+            else
+                objectFileName = "obj.mJAM";
+
+            String sourceFileName;
+            if (args.length >= arg + 2) {
+                sourceFileName = args[arg + 1];
+                debug(interpreter, objectFileName, sourceFileName);
+            } else {
+                interpreter.setInput(InputSource.stdin());
+                interpret(interpreter, objectFileName);
+            }
+            if (gcStats)
+                System.out.println("GC: " + interpreter.collector);
+            if (tierStats && interpreter.tiers != null)
+                System.out.print("Tiers: " + interpreter.tiers + "\n" + interpreter.tiers.profile());
+            if (icStats && interpreter.inlineCaches != null) {
+                System.out.println("Inline caches:");
+                for (int addr = CB; addr < interpreter.inlineCaches.length; addr++) {
+                    if (interpreter.inlineCaches[addr] != null)
+                        System.out.println(String.format("%6d  %s", addr, interpreter.inlineCaches[addr]));
+                }
+            }
+            if (verifyStats && interpreter.verifier != null)
+                System.out.println("Verifier: " + interpreter.verifier);
+            if (profile && interpreter.profiler != null)
+                System.out.print("Profile: " + interpreter.profiler);
+            if (stacksFileName != null && interpreter.profiler != null) {
+                try (FileWriter stacks = new FileWriter(stacksFileName)) {
+                    stacks.write(interpreter.profiler.collapsedStacks());
+                } catch (IOException e) {
+                    System.out.println("Unable to write stacks file " + stacksFileName);
+                }
+            }
+            if (allocProfile && interpreter.allocations != null)
+                System.out.print("Allocations: " + interpreter.allocations);
+            if (snapshotFileName != null) {
+                try (FileWriter heap = new FileWriter(snapshotFileName)) {
+                    heap.write((interpreter.snapshot != null) ? interpreter.snapshot.toString()
+                            : "heap cannot be walked after alloc\n");
+                } catch (IOException e) {
+                    System.out.println("Unable to write heap snapshot " + snapshotFileName);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("usage: java mJAM.Interpreter [-stack words] [-heap words] [-offheap] [-nogc] "
+                    + "[-gcstats] [-jit | -tiered [-callthreshold n] [-loopthreshold n]] [-tierstats] "
+                    + "[-icstats] [-noverify] [-verifystats] [-profile] [-stacks file] [-allocprofile] "
+                    + "[-heapsnapshot file] [-timeout millis] [objectFile [sourceFile]]");
         }
     }
 
     public static void interpret(String objectFileName) {
+        interpret(new Interpreter(), objectFileName);
+    }
 
-        ObjectFile objectFile = new ObjectFile(objectFileName);
-        if (objectFile.read()) {
+    static void interpret(Interpreter interpreter, String objectFileName) {
+        if (interpreter.load(objectFileName)) {
             System.out.println("Unable to load object file " + objectFileName);
             return;
         }
-        interpretProgram();
-        showStatus();
+        interpreter.run();
+        interpreter.showStatus();
     }
 
     public static void debug(String objectFileName, String sourceFileName) {
-        ObjectFile objectFile = new ObjectFile(objectFileName);
-        if (objectFile.read()) {
+        debug(new Interpreter(), objectFileName, sourceFileName);
+    }
+
+    static void debug(Interpreter interpreter, String objectFileName, String sourceFileName) {
+        if (interpreter.load(objectFileName)) {
             System.out.println("Unable to load object file " + objectFileName);
             return;
         }
 
-        sourceLines = new ArrayList<String>();
+        ArrayList<String> sourceLines = new ArrayList<String>();
         try {
             BufferedReader reader = new BufferedReader(new FileReader(new File(sourceFileName)));
             String line = reader.readLine();
@@ -853,6 +2015,7 @@ public class Interpreter {
             return;
         }
 
-        debugProgram();
+        interpreter.sourceLines = sourceLines;
+        interpreter.debugProgram();
     }
 }
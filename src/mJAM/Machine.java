@@ -1,5 +1,7 @@
 package mJAM;
 
+import java.util.Arrays;
+
 /**
  * Defines names and sizes of mJAM instructions and primitives
  * 
@@ -55,14 +57,12 @@ public final class Machine {
 
     // CODE STORE REGISTERS
     public final static int CB = 0; // start of code space
-    public final static int PB = 1024; // size of code space reserved for
-                                       // instructions
-    public final static int PT = PB + Prim.values().length; // code space
-                                                            // reserved for
-                                                            // primitives
-
-    // CODE STORE
-    public static Instruction[] code = new Instruction[PB];
+    public final static int PB = 1 << 30; // addresses of the primitives, far
+                                          // above any code address
+    public final static int PT = PB + Prim.values().length;
+
+    // CODE STORE, grown as instructions are emitted
+    public static Instruction[] code = new Instruction[1024];
     public static int CT = CB;
 
     public static void initCodeGen() {
@@ -139,6 +139,10 @@ public final class Machine {
 
     /**
      * helper operation for emit using integer values
+     * 
+     * @throws IllegalStateException
+     *             if the code store already holds PB instructions, since
+     *             further code addresses would be taken for primitives
      */
     private static void emit(int op, int n, int r, int d) {
         if (n > 255) {
@@ -146,7 +150,9 @@ public final class Machine {
             n = 255; // to allow code generation to continue
         }
         if (CT >= Machine.PB)
-            System.out.println("mJAM: code segment capacity exceeded");
+            throw new IllegalStateException("mJAM: code segment capacity exceeded");
+        if (CT == code.length)
+            code = Arrays.copyOf(code, 2 * CT);
 
         Instruction nextInstr = new Instruction(op, n, r, d);
         Machine.code[CT] = nextInstr;
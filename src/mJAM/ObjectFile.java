@@ -5,13 +5,41 @@
  */
 package mJAM;
 
-import java.io.FileInputStream;
-import java.io.DataInputStream;
 import java.io.FileOutputStream;
 import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
 
+/**
+ * Object files come in two formats. The compact format, which write
+ * produces, starts with a 16 byte header:
+ *
+ * <pre>
+ * magic     4 bytes  "mJAM"
+ * version   2 bytes  1
+ * flags     2 bytes  0
+ * count     4 bytes  number of instructions
+ * checksum  4 bytes  CRC-32 of the instructions that follow
+ * </pre>
+ *
+ * and continues with 8 bytes per instruction: op in the high and r in the
+ * low four bits of the first byte, a zero byte, n in two bytes (the code
+ * generator emits -1 for operands that it leaves unused) and d. The legacy
+ * format, which is still read, has no header and 16 bytes per
+ * instruction: op, n, r and d as ints. All values are big-endian.
+ */
 public class ObjectFile {
 
+    public final static int MAGIC = 0x6D4A414D, VERSION = 1;
+    public final static int HEADER_SIZE = 16, INSTRUCTION_SIZE = 8, LEGACY_INSTRUCTION_SIZE = 16;
+
+    // size from which object files are mapped into memory rather than read;
+    // mapping a smaller file costs more than reading it
+    final static int MAP_THRESHOLD = 1 << 16;
+
     String objectFileName;
 
     public ObjectFile(String objectFileName) {
@@ -20,7 +48,8 @@ public class ObjectFile {
     }
 
     /**
-     * Write code store as object file
+     * Write code store as object file, in the compact format unless one of
+     * its instructions does not fit it
      * 
      * @param output
      *            object file
@@ -28,47 +57,141 @@ public class ObjectFile {
      */
     public boolean write() {
         boolean failed = false;
-        try {
-            FileOutputStream objectFile = new FileOutputStream(objectFileName);
-            DataOutputStream is = new DataOutputStream(objectFile);
-            for (int i = Machine.CB; i < Machine.CT; i++) {
-                Instruction inst = Machine.code[i];
-                is.writeInt(inst.op);
-                is.writeInt(inst.n);
-                is.writeInt(inst.r);
-                is.writeInt(inst.d);
+        try (FileOutputStream objectFile = new FileOutputStream(objectFileName)) {
+            byte[] objectCode = encode(Machine.code, Machine.CT);
+            if (objectCode != null) {
+                objectFile.write(objectCode);
+            } else {
+                DataOutputStream is = new DataOutputStream(objectFile);
+                for (int i = Machine.CB; i < Machine.CT; i++) {
+                    Instruction inst = Machine.code[i];
+                    is.writeInt(inst.op);
+                    is.writeInt(inst.n);
+                    is.writeInt(inst.r);
+                    is.writeInt(inst.d);
+                }
+                is.flush();
             }
-            objectFile.close();
         } catch (Exception e) {
             failed = true;
         }
         return failed;
     }
 
+    /**
+     * Encode code[CB..CT-1] in the compact format
+     * 
+     * @return the contents of the object file, or null if an instruction
+     *         does not fit the format
+     */
+    public static byte[] encode(Instruction[] code, int CT) {
+        ByteBuffer os = ByteBuffer.allocate(HEADER_SIZE + (CT - Machine.CB) * INSTRUCTION_SIZE);
+        os.position(HEADER_SIZE);
+        for (int i = Machine.CB; i < CT; i++) {
+            Instruction inst = code[i];
+            if ((inst.op & ~0xF) != 0 || (inst.r & ~0xF) != 0 || inst.n != (short) inst.n)
+                return null;
+            os.put((byte) (inst.op << 4 | inst.r));
+            os.put((byte) 0);
+            os.putShort((short) inst.n);
+            os.putInt(inst.d);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(os.array(), HEADER_SIZE, os.position() - HEADER_SIZE);
+        os.putInt(0, MAGIC);
+        os.putShort(4, (short) VERSION);
+        os.putShort(6, (short) 0);
+        os.putInt(8, CT - Machine.CB);
+        os.putInt(12, (int) checksum.getValue());
+        return os.array();
+    }
+
     /**
      * Read object file into code store, setting CT
      * 
      * @return true if object code read fails
      */
     public boolean read() {
-        boolean failed = false;
-        try {
-            FileInputStream objectFile = new FileInputStream(objectFileName);
-            DataInputStream is = new DataInputStream(objectFile);
+        Instruction[] code = load();
+        if (code == null)
+            return true;
 
-            Machine.CT = Machine.CB;
-            while (is.available() > 0 && Machine.CT < Machine.PB) {
-                Instruction inst = new Instruction();
-                inst.op = is.readInt();
-                inst.n = is.readInt();
-                inst.r = is.readInt();
-                inst.d = is.readInt();
-                Machine.code[Machine.CT++] = inst;
+        if (Machine.code.length < Machine.CB + code.length)
+            Machine.code = new Instruction[Machine.CB + code.length];
+        System.arraycopy(code, 0, Machine.code, Machine.CB, code.length);
+        Machine.CT = Machine.CB + code.length;
+        return false;
+    }
+
+    /**
+     * Read object file into a new array of instructions, leaving the code
+     * store untouched. Large files are mapped into memory.
+     * 
+     * @return the instructions, or null if object code read fails
+     */
+    public Instruction[] load() {
+        try (FileChannel objectFile = FileChannel.open(Paths.get(objectFileName))) {
+            long size = objectFile.size();
+            if (size >= MAP_THRESHOLD)
+                return decode(objectFile.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            ByteBuffer objectCode = ByteBuffer.allocate((int) size);
+            while (objectCode.hasRemaining()) {
+                if (objectFile.read(objectCode) < 0)
+                    break;
             }
-            objectFile.close();
+            objectCode.flip();
+            return decode(objectCode);
         } catch (Exception e) {
-            failed = true;
+            return null;
         }
-        return failed;
+    }
+
+    /**
+     * Decode the contents of an object file in either format, from the
+     * position to the limit of objectCode, into a new array of instructions.
+     * The position of objectCode is unchanged.
+     * 
+     * @return the instructions, or null if objectCode is not valid object
+     *         code
+     */
+    public static Instruction[] decode(ByteBuffer objectCode) {
+        ByteBuffer is = objectCode.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (is.remaining() >= 4 && is.getInt(is.position()) == MAGIC)
+            return decodeCompact(is);
+        if (is.remaining() % LEGACY_INSTRUCTION_SIZE != 0)
+            return null;
+        Instruction[] code = new Instruction[is.remaining() / LEGACY_INSTRUCTION_SIZE];
+        for (int i = 0; i < code.length; i++) {
+            Instruction inst = new Instruction();
+            inst.op = is.getInt();
+            inst.n = is.getInt();
+            inst.r = is.getInt();
+            inst.d = is.getInt();
+            code[i] = inst;
+        }
+        return code;
+    }
+
+    private static Instruction[] decodeCompact(ByteBuffer is) {
+        if (is.remaining() < HEADER_SIZE)
+            return null;
+        int start = is.position();
+        int version = is.getShort(start + 4), flags = is.getShort(start + 6), count = is.getInt(start + 8);
+        if (version != VERSION || flags != 0 || count < 0
+                || is.remaining() - HEADER_SIZE != (long) count * INSTRUCTION_SIZE)
+            return null;
+
+        CRC32 checksum = new CRC32();
+        is.position(start + HEADER_SIZE);
+        checksum.update(is);
+        if ((int) checksum.getValue() != is.getInt(start + 12))
+            return null;
+
+        Instruction[] code = new Instruction[count];
+        for (int i = 0, at = start + HEADER_SIZE; i < count; i++, at += INSTRUCTION_SIZE) {
+            int opr = is.get(at);
+            code[i] = new Instruction((opr >> 4) & 0xF, is.getShort(at + 2), opr & 0xF, is.getInt(at + 4));
+        }
+        return code;
     }
 }
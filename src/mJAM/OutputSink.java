@@ -0,0 +1,186 @@
+/**
+ * Buffered output of the mJAM put primitives
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Collects the output of put, puteol, putint and putintnl in a byte buffer,
+ * formatting integers directly into it, and writes the buffer to its target
+ * when it is full and whenever the Interpreter flushes it: when a run ends
+ * (by HALT or a failure), before the machine state is dumped, and before a
+ * get primitive waits for input. Characters outside ASCII are encoded in the
+ * default charset, as System.out would encode them.
+ *
+ * The target is an OutputStream, a WritableByteChannel, or by default
+ * whatever System.out is at the time of the flush.
+ */
+public final class OutputSink {
+
+    public final static int DEFAULT_CAPACITY = 8192;
+
+    // longest output of a single primitive: ">>> -2147483648" plus a line
+    // separator
+    private final static int MAX_PUT = 32;
+
+    private final static byte[] PROMPT = { '>', '>', '>', ' ' };
+    private final static Charset CHARSET = Charset.defaultCharset();
+    private final static byte[] EOL = System.lineSeparator().getBytes(CHARSET);
+
+    private final OutputStream stream;
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer wrapped;
+    private int count;
+
+    /**
+     * Creates a sink that writes to System.out
+     */
+    public OutputSink() {
+        this(null, null, DEFAULT_CAPACITY);
+    }
+
+    public OutputSink(OutputStream stream) {
+        this(stream, DEFAULT_CAPACITY);
+    }
+
+    public OutputSink(OutputStream stream, int capacity) {
+        this(stream, null, capacity);
+        if (stream == null)
+            throw new IllegalArgumentException("no output stream");
+    }
+
+    public OutputSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    public OutputSink(WritableByteChannel channel, int capacity) {
+        this(null, channel, capacity);
+        if (channel == null)
+            throw new IllegalArgumentException("no output channel");
+    }
+
+    private OutputSink(OutputStream stream, WritableByteChannel channel, int capacity) {
+        if (capacity < MAX_PUT)
+            throw new IllegalArgumentException("output buffer of " + capacity + " bytes is too small");
+        this.stream = stream;
+        this.channel = channel;
+        buffer = new byte[capacity];
+        wrapped = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Makes room for a primitive's output
+     *
+     * @return true if the buffer had to be flushed and the flush failed
+     */
+    private boolean reserve() {
+        return buffer.length - count < MAX_PUT && flush();
+    }
+
+    /**
+     * Writes character ch (put)
+     *
+     * @return true if the output could not be written
+     */
+    boolean put(char ch) {
+        if (reserve())
+            return true;
+        if (ch < 0x80)
+            buffer[count++] = (byte) ch;
+        else {
+            byte[] encoded = String.valueOf(ch).getBytes(CHARSET);
+            System.arraycopy(encoded, 0, buffer, count, encoded.length);
+            count += encoded.length;
+        }
+        return false;
+    }
+
+    /**
+     * Ends the current line (puteol)
+     *
+     * @return true if the output could not be written
+     */
+    boolean putEol() {
+        if (reserve())
+            return true;
+        System.arraycopy(EOL, 0, buffer, count, EOL.length);
+        count += EOL.length;
+        return false;
+    }
+
+    /**
+     * Writes value in decimal (putint)
+     *
+     * @return true if the output could not be written
+     */
+    boolean putInt(int value) {
+        if (reserve())
+            return true;
+        digits(value);
+        return false;
+    }
+
+    /**
+     * Writes value on a line of its own, prefixed for the tester (putintnl)
+     *
+     * @return true if the output could not be written
+     */
+    boolean putIntNl(int value) {
+        if (reserve())
+            return true;
+        System.arraycopy(PROMPT, 0, buffer, count, PROMPT.length);
+        count += PROMPT.length;
+        digits(value);
+        buffer[count++] = '\n';
+        return false;
+    }
+
+    private void digits(int value) {
+        // work on the negated value, which also covers Integer.MIN_VALUE
+        int negative = value < 0 ? value : -value;
+        if (value < 0)
+            buffer[count++] = '-';
+        int length = 1;
+        for (int rest = negative / 10; rest != 0; rest /= 10)
+            length++;
+        count += length;
+        for (int at = count - 1; at >= count - length; at--) {
+            buffer[at] = (byte) ('0' - negative % 10);
+            negative /= 10;
+        }
+    }
+
+    /**
+     * Writes the buffered output to the target
+     *
+     * @return true if the output could not be written; it is discarded
+     */
+    public boolean flush() {
+        if (count == 0)
+            return false;
+        try {
+            if (channel != null) {
+                wrapped.clear().limit(count);
+                while (wrapped.hasRemaining())
+                    channel.write(wrapped);
+            } else {
+                OutputStream out = (stream != null) ? stream : System.out;
+                out.write(buffer, 0, count);
+                out.flush();
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        } finally {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Execution profile of an mJAM program
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Records where a program spends its instructions. While a run is profiled,
+ * the interpreter executes a decoding without superinstructions, so that
+ * every dispatch is a single instruction, and counts the dispatches of each
+ * code address.
+ *
+ * Method boundaries are found at run time: every CALL, CALLI or CALLD that
+ * enters the code segment starts an activation of the method at its target,
+ * and every RETURN ends the innermost one. The code at CB is the outermost
+ * method. Activations form a calling context tree, whose nodes count the
+ * instructions executed in them (exclusive counts); a method's inclusive
+ * count is the number of instructions executed while it is active, counting
+ * recursive activations once.
+ *
+ * The profile is reported as text (see toString), and as collapsed stacks,
+ * one line per calling context with its exclusive count, the input format of
+ * flame graph tools. Methods and jump targets are named by the labels the
+ * Disassembler assigns them.
+ */
+public final class Profiler {
+
+    private final Instruction[] code;
+    private final int CT;
+    private final Map<Integer, String> labels;
+
+    // decoding run while profiling
+    final Decoder decoded;
+
+    // dispatches per code address, with a slot for CT
+    final long[] hits;
+
+    // calling context tree: method entry, parent, first child and next
+    // sibling of each node, and the instructions executed in it
+    private int[] method = new int[64], parent = new int[64], child = new int[64], sibling = new int[64];
+    private long[] self = new long[64];
+    private int nodes;
+
+    // activations: their nodes, and the instruction count at which the
+    // outermost activation of their method started, or -1
+    private int[] frameNode = new int[64];
+    private long[] frameStart = new long[64];
+    private int depth;
+
+    // per method entry: activations in progress, calls and inclusive count
+    private final int[] active;
+    private final long[] calls, inclusive;
+
+    // instructions executed, and the dispatch count of the interpreter loop
+    // up to which they have been attributed
+    private long clock, mark;
+
+    Profiler(Instruction[] code, int CT, Verifier verified) {
+        this.code = code;
+        this.CT = CT;
+        labels = Disassembler.labels(code, CT);
+        decoded = new Decoder(code, CT, false);
+        decoded.verified = verified;
+        decoded.profiler = this;
+        hits = new long[CT + 1];
+        active = new int[CT + 1];
+        calls = new long[CT + 1];
+        inclusive = new long[CT + 1];
+        start();
+    }
+
+    /**
+     * Discards the profile, for a run from CB
+     */
+    void start() {
+        Arrays.fill(hits, 0);
+        Arrays.fill(active, 0);
+        Arrays.fill(calls, 0);
+        Arrays.fill(inclusive, 0);
+        clock = mark = 0;
+        nodes = 0;
+        depth = 0;
+        push(node(-1, Machine.CB));
+    }
+
+    /**
+     * Called when the interpreter enters its loop, whose dispatch count
+     * starts at 0
+     */
+    void resume() {
+        mark = 0;
+    }
+
+    /**
+     * Attributes the instructions dispatched up to count to the current
+     * activation
+     */
+    void attribute(long count) {
+        self[frameNode[depth - 1]] += count - mark;
+        clock += count - mark;
+        mark = count;
+    }
+
+    /**
+     * Records the start of an activation of the method at target; the call
+     * instruction is part of the caller and has been dispatched at count
+     */
+    void enter(int target, long count) {
+        attribute(count);
+        push(node(frameNode[depth - 1], target));
+    }
+
+    /**
+     * Records the end of the innermost activation; the RETURN instruction is
+     * part of it and has been dispatched at count
+     */
+    void leave(long count) {
+        attribute(count);
+        // a RETURN of the code at CB has no activation to end
+        if (depth > 1)
+            pop();
+    }
+
+    /**
+     * Ends all activations at the end of a run
+     */
+    void finish() {
+        while (depth > 0)
+            pop();
+    }
+
+    private void push(int node) {
+        if (depth == frameNode.length) {
+            frameNode = Arrays.copyOf(frameNode, 2 * depth);
+            frameStart = Arrays.copyOf(frameStart, 2 * depth);
+        }
+        int entry = method[node];
+        calls[entry]++;
+        frameNode[depth] = node;
+        frameStart[depth] = (active[entry]++ == 0) ? clock : -1;
+        depth++;
+    }
+
+    private void pop() {
+        depth--;
+        int entry = method[frameNode[depth]];
+        active[entry]--;
+        if (frameStart[depth] >= 0)
+            inclusive[entry] += clock - frameStart[depth];
+    }
+
+    /**
+     * @return the child of node parentNode for the method at entry, created if
+     *         necessary; a root if parentNode is -1
+     */
+    private int node(int parentNode, int entry) {
+        if (parentNode >= 0) {
+            for (int node = child[parentNode]; node >= 0; node = sibling[node]) {
+                if (method[node] == entry)
+                    return node;
+            }
+        }
+        if (nodes == method.length) {
+            method = Arrays.copyOf(method, 2 * nodes);
+            parent = Arrays.copyOf(parent, 2 * nodes);
+            child = Arrays.copyOf(child, 2 * nodes);
+            sibling = Arrays.copyOf(sibling, 2 * nodes);
+            self = Arrays.copyOf(self, 2 * nodes);
+        }
+        int node = nodes++;
+        method[node] = entry;
+        parent[node] = parentNode;
+        child[node] = -1;
+        self[node] = 0;
+        if (parentNode >= 0) {
+            sibling[node] = child[parentNode];
+            child[parentNode] = node;
+        } else
+            sibling[node] = -1;
+        return node;
+    }
+
+    /**
+     * @return number of instructions executed
+     */
+    public long getInstructions() {
+        return clock;
+    }
+
+    /**
+     * @return number of times the instruction at addr was executed
+     */
+    public long getCount(int addr) {
+        return (addr >= Machine.CB && addr < CT) ? hits[addr] : 0;
+    }
+
+    /**
+     * @return number of activations of the method at entry
+     */
+    public long getCalls(int entry) {
+        return (entry >= Machine.CB && entry < CT) ? calls[entry] : 0;
+    }
+
+    /**
+     * @return number of instructions executed while the method at entry was
+     *         active, including the methods it called
+     */
+    public long getInclusive(int entry) {
+        return (entry >= Machine.CB && entry < CT) ? inclusive[entry] : 0;
+    }
+
+    /**
+     * @return number of instructions executed in activations of the method at
+     *         entry, excluding the methods it called
+     */
+    public long getExclusive(int entry) {
+        long count = 0;
+        for (int node = 0; node < nodes; node++) {
+            if (method[node] == entry)
+                count += self[node];
+        }
+        return count;
+    }
+
+    /**
+     * @return the name of the method or jump target at addr
+     */
+    public String getLabel(int addr) {
+        String label = labels.get(addr);
+        if (label != null)
+            return label;
+        return (addr == Machine.CB) ? "CB" : Integer.toString(addr);
+    }
+
+    /**
+     * @return the calling contexts in which instructions were executed, one
+     *         per line: the methods from CB to the context, separated by
+     *         semicolons, and the number of instructions executed in it
+     */
+    public String collapsedStacks() {
+        StringBuilder s = new StringBuilder();
+        for (int node = 0; node < nodes; node++) {
+            if (self[node] == 0)
+                continue;
+            StringBuilder stack = new StringBuilder(getLabel(method[node]));
+            for (int up = parent[node]; up >= 0; up = parent[up])
+                stack.insert(0, getLabel(method[up]) + ";");
+            s.append(stack).append(' ').append(self[node]).append('\n');
+        }
+        return s.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%d instructions executed%n", clock));
+
+        // methods, by inclusive count
+        long[] exclusive = new long[CT + 1];
+        for (int node = 0; node < nodes; node++)
+            exclusive[method[node]] += self[node];
+        Integer[] methods = sorted(calls, inclusive);
+        s.append(String.format("%nMethods%n%12s %6s %12s %6s %10s  %s%n", "inclusive", "", "exclusive", "", "calls",
+                "method"));
+        for (int entry : methods) {
+            s.append(String.format("%12d %5.1f%% %12d %5.1f%% %10d  %s (%d)%n", inclusive[entry],
+                    percent(inclusive[entry]), exclusive[entry], percent(exclusive[entry]), calls[entry],
+                    getLabel(entry), entry));
+        }
+
+        // opcodes and primitives
+        long[] ops = new long[Machine.intToOp.length], prims = new long[Machine.intToPrim.length];
+        for (int addr = Machine.CB; addr < CT; addr++) {
+            int op = code[addr].op;
+            if (op >= 0 && op < ops.length)
+                ops[op] += hits[addr];
+            if (op == Machine.Op.CALL.ordinal() && decoded.op[addr] != Decoder.CALL
+                    && decoded.op[addr] != Decoder.GENERIC)
+                prims[decoded.d[addr]] += hits[addr];
+        }
+        s.append(String.format("%nOpcodes%n"));
+        for (int op : sorted(ops, ops)) {
+            s.append(String.format("%12d %5.1f%%  %s%n", ops[op], percent(ops[op]), Machine.intToOp[op]));
+        }
+        s.append(String.format("%nPrimitives%n"));
+        for (int prim : sorted(prims, prims)) {
+            s.append(String.format("%12d %5.1f%%  %s%n", prims[prim], percent(prims[prim]), Machine.intToPrim[prim]));
+        }
+
+        // instructions, in code order
+        s.append(String.format("%nInstructions%n"));
+        for (int addr = Machine.CB; addr < CT; addr++) {
+            String label = labels.containsKey(addr) ? labels.get(addr) + ":" : "";
+            s.append(String.format("%12d %5.1f%%  %4d  %-7s%s%n", hits[addr], percent(hits[addr]), addr, label,
+                    Disassembler.format(code[addr], labels)));
+        }
+        return s.toString();
+    }
+
+    private double percent(long count) {
+        return (clock == 0) ? 0 : 100.0 * count / clock;
+    }
+
+    /**
+     * @return the indices with a non-zero count in present, ordered by
+     *         decreasing key
+     */
+    private static Integer[] sorted(long[] present, long[] key) {
+        int size = 0;
+        Integer[] indices = new Integer[present.length];
+        for (int i = 0; i < present.length; i++) {
+            if (present[i] != 0)
+                indices[size++] = i;
+        }
+        indices = Arrays.copyOf(indices, size);
+        Arrays.sort(indices, (a, b) -> Long.compare(key[b], key[a]));
+        return indices;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Outcome of an mJAM program run
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.Arrays;
+
+/**
+ * What Interpreter.execute reports about a run: how it ended, the values the
+ * program printed with putintnl (the values its tests check), how many
+ * instructions it executed and how long it took.
+ */
+public final class Result {
+
+    private final Status status;
+    private final int codeAddress;
+    private final int[] values;
+    private final long instructions, elapsedNanos;
+
+    Result(Status status, int codeAddress, int[] values, long instructions, long elapsedNanos) {
+        this.status = status;
+        this.codeAddress = codeAddress;
+        this.values = values;
+        this.instructions = instructions;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the program halted normally
+     */
+    public boolean isHalted() {
+        return status == Status.HALTED;
+    }
+
+    /**
+     * @return CP at the end of the run: the HALT instruction, or the
+     *         instruction that failed
+     */
+    public int getCodeAddress() {
+        return codeAddress;
+    }
+
+    /**
+     * @return the values printed by putintnl, in order
+     */
+    public int[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * @return number of instructions executed, or -1 if part of the run was
+     *         executed by compiled code, which does not count them
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s at %d, values %s, %d instructions, %.3f ms", status, codeAddress,
+                Arrays.toString(values), instructions, elapsedNanos / 1e6);
+    }
+}
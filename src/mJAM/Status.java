@@ -0,0 +1,60 @@
+/**
+ * Machine status of an mJAM Interpreter
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+/**
+ * The status values of an Interpreter (Interpreter.running, halted and the
+ * failed statuses) as an enumeration, in the same order, with the message
+ * that the interpreter prints for each.
+ */
+public enum Status {
+    RUNNING("Program is running."), //
+    HALTED("Program has halted normally."), //
+    FAILED_DATA_STORE_FULL("Program has failed due to exhaustion of Data Store."), //
+    FAILED_INVALID_CODE_ADDRESS("Program has failed due to an invalid code address."), //
+    FAILED_INVALID_INSTRUCTION("Program has failed due to an invalid instruction."), //
+    FAILED_OVERFLOW("Program has failed due to overflow."), //
+    FAILED_ZERO_DIVIDE("Program has failed due to division by zero."), //
+    FAILED_IO_ERROR("Program has failed due to an IO error."), //
+    FAILED_ARRAY_INDEX("Program has failed due to an array index error."), //
+    FAILED_NULL_REF("Program has failed due to a null pointer reference."), //
+    FAILED_HEAP_REF("Program has failed due to an invalid Heap reference."), //
+    FAILED_METHOD_INDEX("Program has failed due to an improper method index in CALLD."), //
+    FAILED_TIME_LIMIT("Program has failed due to exceeding its time limit.");
+
+    private final String message;
+
+    private Status(String message) {
+        this.message = message;
+    }
+
+    /**
+     * @return the status with the given Interpreter status value, or null if
+     *         there is none
+     */
+    public static Status of(int status) {
+        Status[] values = values();
+        return (status >= 0 && status < values.length) ? values[status] : null;
+    }
+
+    /**
+     * @return the Interpreter status value
+     */
+    public int code() {
+        return ordinal();
+    }
+
+    /**
+     * @return true for the statuses that end a run abnormally
+     */
+    public boolean isFailure() {
+        return this != RUNNING && this != HALTED;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Tiered execution policy of an Interpreter
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.BitSet;
+
+/**
+ * Decides which code of a program runs compiled. Execution starts in the
+ * interpreter tier: a fused Decoder in which two kinds of sites are
+ * profiled. Method entries (CB, the targets of CALL and CALLI, and the
+ * targets of CALLD once they are called) count invocations; loop headers,
+ * the targets of backward JUMP and JUMPIF instructions, count the back edges
+ * taken to them (plus one for every entry into the loop).
+ *
+ * When a site reaches its threshold, the interpreter leaves its loop there
+ * and the site is promoted: the Translator compiles the code reachable from
+ * it. A hot loop is therefore compiled from its header while the method
+ * around it is still running, and a method with a single long loop does not
+ * have to be called again before it benefits. From then on, every address
+ * at which the compiled code can be entered is profiled with limit 0, so
+ * that the interpreter hands control over whenever it arrives there. Sites
+ * that cannot be compiled are no longer profiled.
+ *
+ * Counters and compiled code are kept for as long as the program stays
+ * loaded, so later runs start with the code that earlier runs found hot.
+ */
+public final class Tiers {
+
+    // thresholds used when only tiering is requested
+    public final static int DEFAULT_INVOCATION_THRESHOLD = 1000, DEFAULT_BACK_EDGE_THRESHOLD = 10000;
+
+    private final Instruction[] code;
+    private final int CT;
+    private final int invocationThreshold, backEdgeThreshold;
+
+    final Translator translator;
+
+    // decoding run by the interpreter tier
+    final Decoder profiled;
+
+    // method entries known before the program runs, loop headers, and the
+    // sites for which promotion was attempted
+    private final BitSet methods = new BitSet(), loops = new BitSet(), attempted = new BitSet();
+
+    // tier transitions
+    int promotions, failedPromotions;
+    long entries, bailouts;
+
+    /**
+     * @param invocationThreshold
+     *            number of invocations after which a method is compiled
+     * @param backEdgeThreshold
+     *            number of iterations after which a loop is compiled
+     */
+    Tiers(Instruction[] code, int CT, int invocationThreshold, int backEdgeThreshold) {
+        this.code = code;
+        this.CT = CT;
+        this.invocationThreshold = invocationThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        translator = new Translator(code, CT);
+        profiled = new Decoder(code, CT);
+
+        Decoder single = new Decoder(code, CT, false);
+        methods.set(Machine.CB);
+        for (int addr = Machine.CB; addr < CT; addr++) {
+            switch (single.op[addr]) {
+            case Decoder.CALL:
+            case Decoder.CALLI:
+                methods.set(single.d[addr]);
+                break;
+            case Decoder.JUMP:
+            case Decoder.JUMPIF:
+                if (single.d[addr] <= addr)
+                    loops.set(single.d[addr]);
+                break;
+            }
+        }
+        for (int addr = loops.nextSetBit(0); addr >= 0; addr = loops.nextSetBit(addr + 1))
+            profiled.count(addr, backEdgeThreshold);
+        for (int addr = methods.nextSetBit(0); addr >= 0; addr = methods.nextSetBit(addr + 1))
+            profiled.count(addr, loops.get(addr) ? Math.min(invocationThreshold, backEdgeThreshold)
+                    : invocationThreshold);
+        profiled.callLimit = invocationThreshold;
+    }
+
+    /**
+     * Compiles the code reachable from the hot site addr
+     *
+     * @return the compiled code, or null if it cannot be compiled, in which
+     *         case addr is no longer profiled
+     */
+    Translator.Compiled promote(int addr) {
+        Translator.Compiled compiled = null;
+        if (!attempted.get(addr)) {
+            attempted.set(addr);
+            compiled = translator.translate(addr);
+        }
+        if (compiled == null) {
+            failedPromotions++;
+            profiled.uncount(addr);
+            return null;
+        }
+        promotions++;
+        BitSet entries = compiled.entries;
+        for (int entry = entries.nextSetBit(0); entry >= 0; entry = entries.nextSetBit(entry + 1))
+            profiled.count(entry, 0);
+        return compiled;
+    }
+
+    /**
+     * Records that the interpreter has just executed the instruction at from
+     * on its own, arriving at address to
+     */
+    void executed(int from, int to) {
+        if (code[from].op == Machine.Op.CALLD.ordinal() && to >= Machine.CB && to < CT)
+            profiled.called(to);
+    }
+
+    public int getInvocationThreshold() {
+        return invocationThreshold;
+    }
+
+    public int getBackEdgeThreshold() {
+        return backEdgeThreshold;
+    }
+
+    /**
+     * @return number of sites compiled
+     */
+    public int getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * @return number of hot sites that could not be compiled
+     */
+    public int getFailedPromotions() {
+        return failedPromotions;
+    }
+
+    /**
+     * @return number of times control passed from the interpreter to compiled
+     *         code
+     */
+    public long getCompiledEntries() {
+        return entries;
+    }
+
+    /**
+     * @return number of instructions that compiled code handed back to the
+     *         interpreter
+     */
+    public long getBailouts() {
+        return bailouts;
+    }
+
+    /**
+     * @return number of compiled units and the instructions they contain
+     */
+    public int getCompiledMethods() {
+        return translator.compiledMethods;
+    }
+
+    public int getCompiledInstructions() {
+        return translator.compiledInstructions;
+    }
+
+    /**
+     * @return number of times the interpreter tier arrived at addr before
+     *         the site was compiled, or 0 if addr is not a profiled site
+     */
+    public int getCount(int addr) {
+        if (addr < Machine.CB || addr >= CT || !isSite(addr))
+            return 0;
+        return profiled.counts[addr];
+    }
+
+    /**
+     * @return true if compiled code can be entered at addr
+     */
+    public boolean isCompiled(int addr) {
+        return addr >= Machine.CB && addr < CT && translator.entry(addr) != null;
+    }
+
+    private boolean isSite(int addr) {
+        return methods.get(addr) || loops.get(addr) || profiled.called.get(addr);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("thresholds %d invocations, %d back edges; %d promotions (%d failed), "
+                + "%d entries into compiled code, %d bailouts; %d units, %d instructions compiled",
+                invocationThreshold, backEdgeThreshold, promotions, failedPromotions, entries, bailouts,
+                translator.compiledMethods, translator.compiledInstructions);
+    }
+
+    /**
+     * @return one line per profiled method entry and loop header: its
+     *         address, kind, count and tier
+     */
+    public String profile() {
+        StringBuilder s = new StringBuilder();
+        for (int addr = Machine.CB; addr < CT; addr++) {
+            if (!isSite(addr))
+                continue;
+            String tier = isCompiled(addr) ? "compiled" : attempted.get(addr) ? "not compilable" : "interpreted";
+            s.append(String.format("%6d  %-6s %10d  %s%n", addr, loops.get(addr) ? "loop" : "method",
+                    profiled.counts[addr], tier));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,800 @@
+/**
+ * Translates mJAM methods into JVM bytecode
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+import mJAM.ClassFile.Label;
+
+/**
+ * Compiled execution tier of an Interpreter. When Tiers promotes a hot site
+ * (the entry of a method or the header of a loop), the code reachable from
+ * it without following calls is translated into the execute method of a
+ * hidden class, which HotSpot then compiles like any other Java code.
+ *
+ * Compiled code keeps the machine state in the data store exactly as the
+ * interpreter does, with ST, LB and OB cached in JVM locals. It executes
+ * loads, stores, jumps, CALL, CALLI, RETURN and the arithmetic, relational,
+ * array and field primitives itself. Every other instruction, and every
+ * instruction that would not complete normally (stack overflow, arithmetic
+ * overflow, division by zero, a null or dangling reference, an index out of
+ * bounds, an invalid return address), is handed back to the interpreter,
+ * which executes it and sets the status exactly as it would without
+ * compilation. Control re-enters compiled code at the site it was translated
+ * from or after a call from its code.
+ *
+ * Every POLL_INTERVAL backward branches (loop back edges, recursive calls
+ * and returns within the method), compiled code asks the interpreter whether
+ * the time limit has expired, and if so leaves at the branch target, so that
+ * the interpreter ends the run with status failedTimeLimit.
+ */
+final class Translator {
+
+    /**
+     * Superclass of the compiled methods
+     */
+    static abstract class Compiled {
+        /**
+         * Addresses for which entry() returns this code
+         */
+        BitSet entries;
+
+        /**
+         * Runs from vm.CP until control leaves the method.
+         *
+         * @return true if the instruction at vm.CP must be executed by the
+         *         interpreter, false if vm.CP is simply the next address to
+         *         run
+         */
+        abstract boolean execute(Interpreter vm);
+    }
+
+    private final static String INTERPRETER = "mJAM/Interpreter", DATA_STORE = "mJAM/DataStore",
+            COMPILED = "mJAM/Translator$Compiled";
+
+    // JVM locals of execute
+    private final static int VM = 1, DATA = 2, ST = 3, LB = 4, OB = 5, CP = 6, ADDR = 7, INDEX = 8, RESULT = 9,
+            COUNT = 11;
+
+    private final int CT;
+
+    // single instruction decoding of the code store
+    private final Decoder decoded;
+
+    // compiled code for each address at which compiled code can be entered
+    private final Compiled[] entries;
+
+    int compiledMethods, compiledInstructions;
+
+    Translator(Instruction[] code, int CT) {
+        this.CT = CT;
+        decoded = new Decoder(code, CT, false);
+        entries = new Compiled[CT];
+    }
+
+    /**
+     * @return the compiled code to run at addr, or null if the instruction at
+     *         addr must be interpreted
+     */
+    Compiled entry(int addr) {
+        return entries[addr];
+    }
+
+    /**
+     * Translates the code reachable from entry. Compiled code can then be
+     * entered at entry and at every address after a call from that code,
+     * unless an earlier translation covers the address already. Its entries
+     * are the addresses it covers.
+     *
+     * @return the compiled code, or null if it cannot be translated
+     */
+    Compiled translate(int entry) {
+        // find the instructions of the method, and where it can be entered
+        BitSet body = new BitSet(), resume = new BitSet();
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        pending.push(entry);
+        resume.set(entry);
+        while (!pending.isEmpty()) {
+            int addr = pending.pop();
+            if (addr < Machine.CB || addr >= CT || body.get(addr))
+                continue;
+            body.set(addr);
+            switch (decoded.op[addr]) {
+            case Decoder.JUMP:
+                pending.push(decoded.d[addr]);
+                break;
+            case Decoder.JUMPIF:
+                pending.push(decoded.d[addr]);
+                pending.push(addr + 1);
+                break;
+            case Decoder.RETURN:
+            case Decoder.HALT:
+            case Decoder.JUMPI:
+                break;
+            case Decoder.CALL:
+            case Decoder.CALLI:
+            case Decoder.CALLD:
+            case Decoder.GENERIC:
+                resume.set(addr + 1);
+                pending.push(addr + 1);
+                break;
+            case Decoder.CALLPRIM:
+                if (!inlined(decoded.d[addr]))
+                    resume.set(addr + 1);
+                pending.push(addr + 1);
+                break;
+            default:
+                pending.push(addr + 1);
+                break;
+            }
+        }
+        resume.and(body);
+
+        try {
+            Compiled compiled = define(emit(entry, body, resume));
+            for (int addr = resume.nextSetBit(0); addr >= 0; addr = resume.nextSetBit(addr + 1)) {
+                if (entries[addr] == null)
+                    entries[addr] = compiled;
+                else
+                    resume.clear(addr);
+            }
+            compiled.entries = resume;
+            compiledMethods++;
+            compiledInstructions += body.cardinality();
+            return compiled;
+        } catch (IllegalStateException e) {
+            // too large for 16 bit branch offsets, leave it to the interpreter
+            return null;
+        }
+    }
+
+    private Compiled define(byte[] classFile) {
+        try {
+            Class<?> c = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+            return (Compiled) c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if compiled code executes primitive prim itself
+     */
+    private static boolean inlined(int prim) {
+        switch (Machine.intToPrim[prim]) {
+        case arrayref:
+        case arrayupd:
+        case fieldref:
+        case fieldupd:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    // CODE GENERATION
+
+    private ClassFile cf;
+    private ClassFile.Method m;
+    private Label[] labels;
+    private BitSet body;
+    private Label exit, bailout;
+
+    // interpreter fallbacks still to be emitted, by instruction address
+    private Label[] bails;
+
+    /**
+     * @return class file of the hidden class for the method
+     */
+    private byte[] emit(int entry, BitSet body, BitSet resume) {
+        this.body = body;
+        cf = new ClassFile("mJAM/Method" + entry, COMPILED);
+        ClassFile.Method init = cf.method(0, "<init>", "()V", 1, 1);
+        init.local(ClassFile.ALOAD, 0);
+        init.member(ClassFile.INVOKESPECIAL, cf.methodRef(COMPILED, "<init>", "()V"));
+        init.op(ClassFile.RETURN);
+
+        m = cf.method(0, "execute", "(L" + INTERPRETER + ";)Z", 8, COUNT + 1);
+        labels = new Label[CT];
+        bails = new Label[CT];
+        for (int addr = body.nextSetBit(0); addr >= 0; addr = body.nextSetBit(addr + 1))
+            labels[addr] = new Label();
+        exit = new Label();
+        bailout = new Label();
+
+        // load registers and enter at CP
+        m.local(ClassFile.ALOAD, VM);
+        m.member(ClassFile.GETFIELD, field("data", "L" + DATA_STORE + ";"));
+        m.local(ClassFile.ASTORE, DATA);
+        register("ST", ST, false);
+        register("LB", LB, false);
+        register("OB", OB, false);
+        register("CP", CP, false);
+        m.iconst(Interpreter.POLL_INTERVAL);
+        m.local(ClassFile.ISTORE, COUNT);
+        Label dispatch = new Label();
+        m.place(dispatch);
+        m.local(ClassFile.ILOAD, CP);
+        int[] keys = new int[resume.cardinality()];
+        Label[] targets = new Label[keys.length];
+        for (int i = 0, addr = resume.nextSetBit(0); addr >= 0; i++, addr = resume.nextSetBit(addr + 1)) {
+            keys[i] = addr;
+            targets[i] = labels[addr];
+        }
+        m.lookupswitch(keys, targets, exit);
+
+        for (int addr = body.nextSetBit(0); addr >= 0; addr = body.nextSetBit(addr + 1)) {
+            m.place(labels[addr]);
+            if (instruction(addr, dispatch) && body.nextSetBit(addr + 1) != addr + 1)
+                transfer(addr, addr + 1);
+        }
+
+        // fallbacks: leave with CP at the instruction to interpret
+        for (int addr = 0; addr < CT; addr++) {
+            if (bails[addr] != null) {
+                m.place(bails[addr]);
+                m.iconst(addr);
+                m.local(ClassFile.ISTORE, CP);
+                m.branch(ClassFile.GOTO, bailout);
+            }
+        }
+
+        // write back registers and return
+        Label writeBack = new Label();
+        m.place(exit);
+        m.iconst(0);
+        m.branch(ClassFile.GOTO, writeBack);
+        m.place(bailout);
+        m.iconst(1);
+        m.place(writeBack);
+        register("ST", ST, true);
+        register("LB", LB, true);
+        register("OB", OB, true);
+        register("CP", CP, true);
+        m.op(ClassFile.IRETURN);
+        return cf.toByteArray();
+    }
+
+    /**
+     * Emits the code for the instruction at addr
+     *
+     * @return true if control can fall through to the next instruction
+     */
+    private boolean instruction(int addr, Label dispatch) {
+        int n = decoded.n[addr], d = decoded.d[addr];
+        switch (decoded.op[addr]) {
+        case Decoder.LOAD:
+        case Decoder.LOAD_LB:
+        case Decoder.LOAD_OB:
+            // data[st++] = data[d + base]
+            checkSpace(addr, 1);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, ST);
+            m.local(ClassFile.ALOAD, DATA);
+            address(decoded.op[addr] - Decoder.LOAD, d);
+            get();
+            set();
+            m.iinc(ST, 1);
+            return true;
+        case Decoder.LOADA:
+        case Decoder.LOADA_LB:
+        case Decoder.LOADA_OB:
+            checkSpace(addr, 1);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, ST);
+            address(decoded.op[addr] - Decoder.LOADA, d);
+            set();
+            m.iinc(ST, 1);
+            return true;
+        case Decoder.LOADI:
+            checkSpace(addr, 0);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            get();
+            set();
+            return true;
+        case Decoder.LOADL:
+            checkSpace(addr, 1);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, ST);
+            m.iconst(d);
+            set();
+            m.iinc(ST, 1);
+            return true;
+        case Decoder.STORE:
+        case Decoder.STORE_LB:
+        case Decoder.STORE_OB:
+            // data[d + base] = data[--st]
+            m.iinc(ST, -1);
+            m.local(ClassFile.ALOAD, DATA);
+            address(decoded.op[addr] - Decoder.STORE, d);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, ST);
+            get();
+            set();
+            return true;
+        case Decoder.STOREI:
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            m.local(ClassFile.ALOAD, DATA);
+            top(2);
+            get();
+            set();
+            m.iinc(ST, -2);
+            return true;
+        case Decoder.CALL:
+            // push frame (OB, LB, return address), no instance
+            checkSpace(addr, 3);
+            store(0, OB);
+            store(1, LB);
+            storeConstant(2, addr + 1);
+            m.iconst(Machine.nullRep);
+            m.local(ClassFile.ISTORE, OB);
+            m.local(ClassFile.ILOAD, ST);
+            m.local(ClassFile.ISTORE, LB);
+            m.iinc(ST, 3);
+            transfer(addr, d);
+            return false;
+        case Decoder.CALLI:
+            // instance address on stack is overwritten by the frame
+            checkSpace(addr, 2);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            m.local(ClassFile.ISTORE, ADDR);
+            store(-1, OB);
+            store(0, LB);
+            storeConstant(1, addr + 1);
+            m.local(ClassFile.ILOAD, ADDR);
+            m.local(ClassFile.ISTORE, OB);
+            m.local(ClassFile.ILOAD, ST);
+            m.iconst(1);
+            m.op(ClassFile.ISUB);
+            m.local(ClassFile.ISTORE, LB);
+            m.iinc(ST, 2);
+            transfer(addr, d);
+            return false;
+        case Decoder.RETURN:
+            // the return address is checked before anything changes
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, LB);
+            m.iconst(2);
+            m.op(ClassFile.IADD);
+            get();
+            m.op(ClassFile.DUP);
+            m.local(ClassFile.ISTORE, INDEX);
+            m.branch(ClassFile.IFLT, bail(addr));
+            m.local(ClassFile.ILOAD, INDEX);
+            m.iconst(CT);
+            m.branch(ClassFile.IF_ICMPGE, bail(addr));
+            m.local(ClassFile.ILOAD, LB);
+            m.iconst(d);
+            m.op(ClassFile.ISUB);
+            m.local(ClassFile.ISTORE, ADDR);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, LB);
+            get();
+            m.local(ClassFile.ISTORE, OB);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, LB);
+            m.iconst(1);
+            m.op(ClassFile.IADD);
+            get();
+            m.local(ClassFile.ISTORE, LB);
+            if (n == 1) {
+                m.local(ClassFile.ALOAD, DATA);
+                m.local(ClassFile.ILOAD, ADDR);
+                m.local(ClassFile.ALOAD, DATA);
+                top(1);
+                get();
+                set();
+            }
+            m.local(ClassFile.ILOAD, ADDR);
+            m.iconst(n);
+            m.op(ClassFile.IADD);
+            m.local(ClassFile.ISTORE, ST);
+            // the caller may be part of this method (recursion)
+            m.local(ClassFile.ILOAD, INDEX);
+            m.local(ClassFile.ISTORE, CP);
+            poll(dispatch, -1);
+            return false;
+        case Decoder.PUSH:
+            checkSpace(addr, d);
+            m.iinc(ST, d);
+            return true;
+        case Decoder.POP:
+            m.iinc(ST, -d);
+            return true;
+        case Decoder.JUMP:
+            transfer(addr, d);
+            return false;
+        case Decoder.JUMPIF: {
+            m.iinc(ST, -1);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, ST);
+            get();
+            m.iconst(n);
+            boolean forward = body.get(d) && d > addr;
+            Label taken = forward ? labels[d] : new Label();
+            m.branch(ClassFile.IF_ICMPEQ, taken);
+            if (!forward) {
+                Label next = new Label();
+                m.branch(ClassFile.GOTO, next);
+                m.place(taken);
+                transfer(addr, d);
+                m.place(next);
+            }
+            return true;
+        }
+        case Decoder.NOT:
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            m.iconst(Machine.trueRep);
+            bool(ClassFile.IF_ICMPEQ);
+            set();
+            return true;
+        case Decoder.AND:
+        case Decoder.OR: {
+            m.iinc(ST, -1);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            // AND is false as soon as an operand is not true, OR is true as
+            // soon as an operand is true
+            boolean and = decoded.op[addr] == Decoder.AND;
+            int decide = and ? ClassFile.IF_ICMPNE : ClassFile.IF_ICMPEQ;
+            Label decided = new Label(), done = new Label();
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            m.iconst(Machine.trueRep);
+            m.branch(decide, decided);
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, ST);
+            get();
+            m.iconst(Machine.trueRep);
+            m.branch(decide, decided);
+            m.iconst(and ? Machine.trueRep : Machine.falseRep);
+            m.branch(ClassFile.GOTO, done);
+            m.place(decided);
+            m.iconst(and ? Machine.falseRep : Machine.trueRep);
+            m.place(done);
+            set();
+            return true;
+        }
+        case Decoder.SUCC:
+        case Decoder.PRED:
+        case Decoder.NEG:
+            // int arithmetic that wraps, as in the interpreter
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            if (decoded.op[addr] == Decoder.NEG) {
+                m.op(ClassFile.INEG);
+            } else {
+                m.iconst(1);
+                m.op(decoded.op[addr] == Decoder.SUCC ? ClassFile.IADD : ClassFile.ISUB);
+            }
+            set();
+            return true;
+        case Decoder.ADD:
+        case Decoder.SUB:
+        case Decoder.MULT:
+            // long result, which must fit into an int
+            m.local(ClassFile.ALOAD, DATA);
+            top(2);
+            get();
+            m.op(ClassFile.I2L);
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            m.op(ClassFile.I2L);
+            m.op(decoded.op[addr] == Decoder.ADD ? ClassFile.LADD
+                    : decoded.op[addr] == Decoder.SUB ? ClassFile.LSUB : ClassFile.LMUL);
+            m.local(ClassFile.LSTORE, RESULT);
+            m.local(ClassFile.LLOAD, RESULT);
+            m.op(ClassFile.L2I);
+            m.op(ClassFile.I2L);
+            m.local(ClassFile.LLOAD, RESULT);
+            m.op(ClassFile.LCMP);
+            m.branch(ClassFile.IFNE, bail(addr));
+            m.local(ClassFile.ALOAD, DATA);
+            top(2);
+            m.local(ClassFile.LLOAD, RESULT);
+            m.op(ClassFile.L2I);
+            set();
+            m.iinc(ST, -1);
+            return true;
+        case Decoder.DIV:
+        case Decoder.MOD:
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            m.branch(ClassFile.IFEQ, bail(addr));
+            binary();
+            m.op(decoded.op[addr] == Decoder.DIV ? ClassFile.IDIV : ClassFile.IREM);
+            set();
+            return true;
+        case Decoder.LT:
+        case Decoder.LE:
+        case Decoder.GE:
+        case Decoder.GT:
+        case Decoder.EQ:
+        case Decoder.NE:
+            binary();
+            bool(FALSE_IF[decoded.op[addr] - Decoder.LT]);
+            set();
+            return true;
+        case Decoder.CALLPRIM:
+            if (!inlined(d))
+                break;
+            primitive(addr, Machine.intToPrim[d]);
+            return true;
+        default:
+            break;
+        }
+
+        // everything else is left to the interpreter
+        m.branch(ClassFile.GOTO, bail(addr));
+        return false;
+    }
+
+    // comparisons that make LT .. NE false
+    private final static int[] FALSE_IF = { ClassFile.IF_ICMPGE, ClassFile.IF_ICMPGT, ClassFile.IF_ICMPLT,
+            ClassFile.IF_ICMPLE, ClassFile.IF_ICMPNE, ClassFile.IF_ICMPEQ };
+
+    /**
+     * Pops one operand of a binary primitive and leaves data, st - 1,
+     * data[st - 1], data[st] on the JVM stack, ready for the operation and
+     * the store of its result
+     */
+    private void binary() {
+        m.iinc(ST, -1);
+        m.local(ClassFile.ALOAD, DATA);
+        top(1);
+        m.local(ClassFile.ALOAD, DATA);
+        top(1);
+        get();
+        m.local(ClassFile.ALOAD, DATA);
+        m.local(ClassFile.ILOAD, ST);
+        get();
+    }
+
+    /**
+     * Emits the array and field primitives, falling back to the interpreter
+     * whenever callPrimitive would fail
+     */
+    private void primitive(int addr, Machine.Prim prim) {
+        boolean update = (prim == Machine.Prim.arrayupd || prim == Machine.Prim.fieldupd);
+        int args = update ? 3 : 2;
+
+        // addr = data[st - args], checked as in invalidHeapRef
+        m.local(ClassFile.ALOAD, DATA);
+        top(args);
+        get();
+        m.local(ClassFile.ISTORE, ADDR);
+        m.local(ClassFile.ILOAD, ADDR);
+        m.iconst(Machine.nullRep);
+        m.branch(ClassFile.IF_ICMPEQ, bail(addr));
+        m.local(ClassFile.ILOAD, ADDR);
+        m.local(ClassFile.ALOAD, VM);
+        m.member(ClassFile.GETFIELD, field("HT", "I"));
+        m.iconst(2);
+        m.op(ClassFile.IADD);
+        m.branch(ClassFile.IF_ICMPLT, bail(addr));
+        m.local(ClassFile.ILOAD, ADDR);
+        m.local(ClassFile.ALOAD, VM);
+        m.member(ClassFile.GETFIELD, field("HB", "I"));
+        m.branch(ClassFile.IF_ICMPGE, bail(addr));
+
+        // index = data[st - args + 1], within the size of the array or object
+        m.local(ClassFile.ALOAD, DATA);
+        top(args - 1);
+        get();
+        m.local(ClassFile.ISTORE, INDEX);
+        if (prim == Machine.Prim.arrayref || prim == Machine.Prim.arrayupd) {
+            m.local(ClassFile.ALOAD, DATA);
+            m.local(ClassFile.ILOAD, ADDR);
+            m.iconst(2);
+            m.op(ClassFile.ISUB);
+            get();
+            m.iconst(-2);
+            m.branch(ClassFile.IF_ICMPNE, bail(addr));
+        }
+        m.local(ClassFile.ILOAD, INDEX);
+        m.branch(ClassFile.IFLT, bail(addr));
+        m.local(ClassFile.ILOAD, INDEX);
+        m.local(ClassFile.ALOAD, DATA);
+        m.local(ClassFile.ILOAD, ADDR);
+        m.iconst(1);
+        m.op(ClassFile.ISUB);
+        get();
+        m.branch(ClassFile.IF_ICMPGE, bail(addr));
+
+        if (update) {
+            // data[addr + index] = data[st - 1]
+            m.local(ClassFile.ALOAD, DATA);
+            element();
+            m.local(ClassFile.ALOAD, DATA);
+            top(1);
+            get();
+            set();
+            m.iinc(ST, -3);
+        } else {
+            // data[st - 2] = data[addr + index]
+            m.local(ClassFile.ALOAD, DATA);
+            top(2);
+            m.local(ClassFile.ALOAD, DATA);
+            element();
+            get();
+            set();
+            m.iinc(ST, -1);
+        }
+    }
+
+    private void element() {
+        m.local(ClassFile.ILOAD, ADDR);
+        m.local(ClassFile.ILOAD, INDEX);
+        m.op(ClassFile.IADD);
+    }
+
+    // EMISSION HELPERS
+
+    private int field(String name, String desc) {
+        return cf.fieldRef(INTERPRETER, name, desc);
+    }
+
+    /**
+     * Copies machine register name from (store false) or to (store true) JVM
+     * local index
+     */
+    private void register(String name, int index, boolean store) {
+        m.local(ClassFile.ALOAD, VM);
+        if (store) {
+            m.local(ClassFile.ILOAD, index);
+            m.member(ClassFile.PUTFIELD, field(name, "I"));
+        } else {
+            m.member(ClassFile.GETFIELD, field(name, "I"));
+            m.local(ClassFile.ISTORE, index);
+        }
+    }
+
+    private void get() {
+        m.member(ClassFile.INVOKEVIRTUAL, cf.methodRef(DATA_STORE, "get", "(I)I"));
+    }
+
+    private void set() {
+        m.member(ClassFile.INVOKEVIRTUAL, cf.methodRef(DATA_STORE, "set", "(II)V"));
+    }
+
+    /**
+     * Pushes st - k
+     */
+    private void top(int k) {
+        m.local(ClassFile.ILOAD, ST);
+        if (k != 0) {
+            m.iconst(k);
+            m.op(ClassFile.ISUB);
+        }
+    }
+
+    /**
+     * Pushes d + the register selected by base: 0 = none (already folded into
+     * d), 1 = LB, 2 = OB
+     */
+    private void address(int base, int d) {
+        m.iconst(d);
+        if (base != 0) {
+            m.local(ClassFile.ILOAD, base == 1 ? LB : OB);
+            m.op(ClassFile.IADD);
+        }
+    }
+
+    /**
+     * data[st + k] = register
+     */
+    private void store(int k, int register) {
+        m.local(ClassFile.ALOAD, DATA);
+        top(-k);
+        m.local(ClassFile.ILOAD, register);
+        set();
+    }
+
+    /**
+     * data[st + k] = value
+     */
+    private void storeConstant(int k, int value) {
+        m.local(ClassFile.ALOAD, DATA);
+        top(-k);
+        m.iconst(value);
+        set();
+    }
+
+    /**
+     * Falls back to the interpreter at addr if the stack cannot grow by words
+     */
+    private void checkSpace(int addr, int words) {
+        m.local(ClassFile.ALOAD, VM);
+        m.member(ClassFile.GETFIELD, field("HT", "I"));
+        m.local(ClassFile.ILOAD, ST);
+        m.op(ClassFile.ISUB);
+        m.iconst(words);
+        m.branch(ClassFile.IF_ICMPLT, bail(addr));
+    }
+
+    /**
+     * @return label of the fallback that interprets the instruction at addr
+     */
+    private Label bail(int addr) {
+        if (bails[addr] == null)
+            bails[addr] = new Label();
+        return bails[addr];
+    }
+
+    /**
+     * Continues at addr from the instruction at from, inside the method if
+     * addr is part of it
+     */
+    private void transfer(int from, int addr) {
+        if (addr >= 0 && addr < CT && body.get(addr)) {
+            if (addr <= from)
+                poll(labels[addr], addr);
+            else
+                m.branch(ClassFile.GOTO, labels[addr]);
+        } else {
+            m.iconst(addr);
+            m.local(ClassFile.ISTORE, CP);
+            m.branch(ClassFile.GOTO, exit);
+        }
+    }
+
+    /**
+     * Takes a backward branch to target, first leaving the method with CP =
+     * addr (or CP as it is, if addr is negative) if the time limit has
+     * expired. The clock is read every POLL_INTERVAL backward branches.
+     */
+    private void poll(Label target, int addr) {
+        m.iinc(COUNT, -1);
+        m.local(ClassFile.ILOAD, COUNT);
+        m.branch(ClassFile.IFGT, target);
+        m.iconst(Interpreter.POLL_INTERVAL);
+        m.local(ClassFile.ISTORE, COUNT);
+        m.local(ClassFile.ALOAD, VM);
+        m.member(ClassFile.INVOKEVIRTUAL, cf.methodRef(INTERPRETER, "timeUp", "()Z"));
+        m.branch(ClassFile.IFEQ, target);
+        if (addr >= 0) {
+            m.iconst(addr);
+            m.local(ClassFile.ISTORE, CP);
+        }
+        m.branch(ClassFile.GOTO, exit);
+    }
+
+    /**
+     * Replaces the two ints on top of the JVM stack by falseRep if the
+     * comparison ifFalse holds for them, and by trueRep otherwise
+     */
+    private void bool(int ifFalse) {
+        Label otherwise = new Label(), done = new Label();
+        m.branch(ifFalse, otherwise);
+        m.iconst(Machine.trueRep);
+        m.branch(ClassFile.GOTO, done);
+        m.place(otherwise);
+        m.iconst(Machine.falseRep);
+        m.place(done);
+    }
+}
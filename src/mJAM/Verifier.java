@@ -0,0 +1,387 @@
+/**
+ * Static verification of mJAM code
+ * @author prins
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Checks, before a program runs, that the stack depth of every instruction
+ * of every method is known, so that a method never pushes more than a fixed
+ * number of words onto its frame. Methods are the code reachable from CB and
+ * from the targets of CALL and CALLI without following calls. The depth of
+ * an instruction is counted from the start of its method's locals: LB+3,
+ * or SB for the code at CB.
+ *
+ * Verification fails if code reachable from CB
+ * <ul>
+ * <li>has a jump or call target that is not a fixed address in [CB, CT), or
+ * a dynamic one (JUMPI, CALLD), or runs off the end of the code segment;</li>
+ * <li>reaches an instruction with different stack depths, or pops more than
+ * its method has pushed;</li>
+ * <li>contains a RETURN with n outside 0..1 or negative d, or a method whose
+ * RETURNs disagree on n and d;</li>
+ * <li>contains an invalid instruction.</li>
+ * </ul>
+ *
+ * If verification succeeds, every frame needs at most the words computed for
+ * its method (see getFrameSize), and the interpreter can check for stack
+ * space once per call instead of on every push. Since the return addresses
+ * and dynamic links in the frames are ordinary data, a return is only known to
+ * land in a verified frame if the stack height it leaves matches the height
+ * computed for the return address (see offsets).
+ */
+public final class Verifier {
+
+    // longest frame accepted, so that frame tops cannot overflow
+    private final static int MAX_FRAME = 1 << 24;
+
+    private final Instruction[] code;
+    private final int CT;
+    private final Decoder single;
+
+    // words each method needs above its LB, by entry address; 0 elsewhere
+    final int[] frames;
+
+    // ST - LB before the instruction at each address, and the frame size of
+    // the method it belongs to; UNKNOWN if the address is not reached or
+    // belongs to methods that disagree. Both have a slot for CT.
+    final int[] offsets, reaches;
+    final static int UNKNOWN = Integer.MIN_VALUE;
+
+    // args (d) and result size (n) of each method, from its RETURNs; -1 if
+    // the method never returns
+    private final int[] args, results;
+
+    private final BitSet methods = new BitSet(), reached = new BitSet();
+
+    // scratch space of summarize and analyze, shared by all methods so that
+    // verification takes time linear in the code reachable from each method:
+    // the entry of the method that last visited each address, the depths of
+    // the method being analyzed (-1 where it does not reach), and the
+    // addresses it reaches
+    private final int[] visitor, depth, visited;
+    private String error;
+
+    public Verifier(Instruction[] code, int CT) {
+        this.code = code;
+        this.CT = CT;
+        single = new Decoder(code, CT, false);
+        frames = new int[CT];
+        offsets = new int[CT + 1];
+        reaches = new int[CT + 1];
+        args = new int[CT];
+        results = new int[CT];
+        visitor = new int[CT];
+        depth = new int[CT];
+        visited = new int[CT];
+    }
+
+    /**
+     * Verifies the code
+     *
+     * @return true if verification fails; see getError
+     */
+    public boolean verify() {
+        error = null;
+        methods.clear();
+        reached.clear();
+        if (CT <= Machine.CB)
+            return fail(Machine.CB, "runs off the end of the code segment");
+        for (int addr = Machine.CB; addr < CT; addr++) {
+            if (single.op[addr] == Decoder.CALL || single.op[addr] == Decoder.CALLI)
+                methods.set(single.d[addr]);
+        }
+        // the code at CB runs in the frame at SB, which has no link data
+        if (methods.get(Machine.CB))
+            return fail(Machine.CB, "call of the program entry");
+        methods.set(Machine.CB);
+        Arrays.fill(frames, 0);
+        Arrays.fill(offsets, UNKNOWN);
+        Arrays.fill(reaches, 0);
+        Arrays.fill(args, -1);
+        Arrays.fill(results, -1);
+        Arrays.fill(visitor, -1);
+        Arrays.fill(depth, -1);
+        for (int entry = methods.nextSetBit(0); entry >= 0; entry = methods.nextSetBit(entry + 1)) {
+            if (summarize(entry))
+                return true;
+        }
+        for (int entry = methods.nextSetBit(0); entry >= 0; entry = methods.nextSetBit(entry + 1)) {
+            if (analyze(entry))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return why verification failed, or null if it did not
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return the number of words a frame of the method starting at entry
+     *         needs above its LB, including the link data; or 0 if there is
+     *         no method at entry or the code has not been verified
+     */
+    public int getFrameSize(int entry) {
+        return (error == null && entry >= Machine.CB && entry < CT) ? frames[entry] : 0;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null)
+            return "failed at " + error;
+        int methodCount = 0, largest = 0;
+        for (int entry = methods.nextSetBit(0); entry >= 0; entry = methods.nextSetBit(entry + 1)) {
+            methodCount++;
+            largest = Math.max(largest, frames[entry]);
+        }
+        return String.format("passed, %d methods, largest frame %d words", methodCount, largest);
+    }
+
+    private boolean fail(int addr, String message) {
+        error = "instruction " + addr + ": " + message;
+        return true;
+    }
+
+    /**
+     * Finds the RETURNs reachable from entry and records the number of
+     * arguments and results of the method
+     *
+     * @return true if they disagree or are invalid
+     */
+    private boolean summarize(int entry) {
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        pending.push(entry);
+        while (!pending.isEmpty()) {
+            int addr = pending.pop();
+            if (addr < Machine.CB || addr >= CT || visitor[addr] == entry)
+                continue;
+            visitor[addr] = entry;
+            Instruction instr = code[addr];
+            switch (single.op[addr]) {
+            case Decoder.RETURN:
+                if (instr.d < 0)
+                    return fail(addr, "RETURN with negative d");
+                if (results[entry] >= 0 && (results[entry] != instr.n || args[entry] != instr.d))
+                    return fail(addr, "RETURN disagrees with the other RETURNs of method " + entry);
+                results[entry] = instr.n;
+                args[entry] = instr.d;
+                break;
+            case Decoder.JUMP:
+                pending.push(single.d[addr]);
+                break;
+            case Decoder.JUMPIF:
+                pending.push(single.d[addr]);
+                pending.push(addr + 1);
+                break;
+            case Decoder.HALT:
+                break;
+            default:
+                // anything else either falls through or fails in analyze
+                pending.push(addr + 1);
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the stack depth of every instruction of the method starting at
+     * entry, and the size of its frames
+     *
+     * @return true if the depths are inconsistent or the code is invalid
+     */
+    private boolean analyze(int entry) {
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        depth[entry] = 0;
+        pending.push(entry);
+        visited[0] = entry;
+        int count = 1, max = 0;
+
+        while (!pending.isEmpty()) {
+            int addr = pending.pop();
+            int before = depth[addr];
+            Instruction instr = code[addr];
+            int pops = 0, pushes = 0, next = addr + 1, branch = -1;
+
+            if (instr.op < 0 || instr.op >= Machine.intToOp.length)
+                return fail(addr, "invalid instruction");
+            switch (Machine.intToOp[instr.op]) {
+            case LOAD:
+            case LOADA:
+            case LOADL:
+                pushes = 1;
+                break;
+            case LOADI:
+                pops = 1;
+                pushes = 1;
+                break;
+            case STORE:
+                pops = 1;
+                break;
+            case STOREI:
+                pops = 2;
+                break;
+            case CALL:
+                if (single.op[addr] == Decoder.CALL) {
+                    int callee = single.d[addr];
+                    if (results[callee] < 0)
+                        next = -1; // never returns
+                    pops = Math.max(args[callee], 0);
+                    pushes = Math.max(results[callee], 0);
+                } else if (single.op[addr] != Decoder.GENERIC) {
+                    // primitive
+                    int[] effect = PRIMITIVE[single.d[addr]];
+                    pops = effect[0];
+                    pushes = effect[1];
+                } else
+                    return fail(addr, "CALL target is not a fixed code address");
+                break;
+            case CALLI:
+                if (single.op[addr] != Decoder.CALLI)
+                    return fail(addr, "CALLI target is not a fixed code address");
+                int callee = single.d[addr];
+                if (results[callee] < 0)
+                    next = -1;
+                pops = 1 + Math.max(args[callee], 0);
+                pushes = Math.max(results[callee], 0);
+                break;
+            case CALLD:
+                return fail(addr, "dynamic call");
+            case RETURN:
+                if (single.op[addr] != Decoder.RETURN)
+                    return fail(addr, "RETURN with n outside 0..1");
+                pops = instr.n;
+                next = -1;
+                break;
+            case PUSH:
+                if (instr.d < 0)
+                    return fail(addr, "PUSH of a negative count");
+                pushes = instr.d;
+                break;
+            case POP:
+                if (instr.d < 0)
+                    return fail(addr, "POP of a negative count");
+                pops = instr.d;
+                break;
+            case JUMP:
+                if (single.op[addr] != Decoder.JUMP)
+                    return fail(addr, "JUMP target is not a fixed code address");
+                branch = single.d[addr];
+                next = -1;
+                break;
+            case JUMPIF:
+                if (single.op[addr] != Decoder.JUMPIF)
+                    return fail(addr, "JUMPIF target is not a fixed code address");
+                pops = 1;
+                branch = single.d[addr];
+                break;
+            case JUMPI:
+                return fail(addr, "dynamic jump");
+            case HALT:
+                next = -1;
+                break;
+            }
+
+            if (before < pops)
+                return fail(addr, "pops " + pops + " words from a stack of depth " + before);
+            int after = before - pops + pushes;
+            max = Math.max(max, Math.max(after, before));
+            if (max > MAX_FRAME)
+                return fail(addr, "frame too large");
+            if (next >= CT)
+                return fail(addr, "runs off the end of the code segment");
+
+            for (int target : new int[] { next, branch }) {
+                if (target < 0)
+                    continue;
+                if (depth[target] < 0) {
+                    depth[target] = after;
+                    visited[count++] = target;
+                    pending.push(target);
+                } else if (depth[target] != after)
+                    return fail(target, "reached with stack depths " + depth[target] + " and " + after);
+            }
+        }
+
+        int base = (entry == Machine.CB) ? 0 : 3;
+        frames[entry] = base + max;
+        for (int i = 0; i < count; i++) {
+            int addr = visited[i];
+            if (!reached.get(addr)) {
+                reached.set(addr);
+                offsets[addr] = base + depth[addr];
+            } else if (offsets[addr] != base + depth[addr])
+                offsets[addr] = UNKNOWN;
+            reaches[addr] = Math.max(reaches[addr], frames[entry]);
+            depth[addr] = -1;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of words prim pops and the number it pushes
+     */
+    public static int[] getEffect(Machine.Prim prim) {
+        return PRIMITIVE[prim.ordinal()].clone();
+    }
+
+    // words popped and pushed by each primitive
+    private final static int[][] PRIMITIVE = new int[Machine.Prim.values().length][];
+
+    static {
+        for (Machine.Prim prim : Machine.Prim.values()) {
+            int pops, pushes;
+            switch (prim) {
+            case id:
+            case geteol:
+            case puteol:
+                pops = 0;
+                pushes = 0;
+                break;
+            case eol:
+            case eof:
+                pops = 0;
+                pushes = 1;
+                break;
+            case not:
+            case succ:
+            case pred:
+            case neg:
+            case alloc:
+            case newarr:
+                pops = 1;
+                pushes = 1;
+                break;
+            case get:
+            case put:
+            case getint:
+            case putint:
+            case putintnl:
+            case dispose:
+                pops = 1;
+                pushes = 0;
+                break;
+            case arrayupd:
+            case fieldupd:
+                pops = 3;
+                pushes = 0;
+                break;
+            default:
+                // binary operators, newobj, arrayref and fieldref
+                pops = 2;
+                pushes = 1;
+                break;
+            }
+            PRIMITIVE[prim.ordinal()] = new int[] { pops, pushes };
+        }
+    }
+}
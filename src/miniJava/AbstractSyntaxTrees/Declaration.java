@@ -8,6 +8,7 @@ package miniJava.AbstractSyntaxTrees;
 import miniJava.CodeGenerator.RuntimeEntity;
 import miniJava.ContextualAnalyzer.IdTable;
 import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SymbolTable;
 
 public abstract class Declaration extends AST {
 
@@ -20,5 +21,6 @@ public abstract class Declaration extends AST {
     public RuntimeEntity entity;
     public IdTable table;
     public String name;
+    public int symbol = SymbolTable.NONE;
     public Type type;
 }
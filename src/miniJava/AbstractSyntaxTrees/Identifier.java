@@ -7,17 +7,24 @@ package miniJava.AbstractSyntaxTrees;
 
 import miniJava.CodeGenerator.RuntimeEntity;
 import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SymbolTable;
 
 public class Identifier extends Terminal {
 
     public Identifier(String s, SourcePosition posn) {
+        this(s, SymbolTable.NONE, posn);
+    }
+
+    public Identifier(String s, int symbol, SourcePosition posn) {
         super(s, posn);
+        this.symbol = symbol;
     }
 
     public <A, R> R visit(Visitor<A, R> v, A o) {
         return v.visitIdentifier(this, o);
     }
 
+    public int symbol;
     public Declaration decl;
     public RuntimeEntity entity;
 }
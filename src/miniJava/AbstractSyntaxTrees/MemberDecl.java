@@ -17,6 +17,7 @@ abstract public class MemberDecl extends Declaration {
 
     public MemberDecl(MemberDecl md, SourcePosition posn) {
         super(md.name, md.type, posn);
+        this.symbol = md.symbol;
         this.isPrivate = md.isPrivate;
         this.isStatic = md.isStatic;
     }
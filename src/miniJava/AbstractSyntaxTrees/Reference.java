@@ -7,6 +7,7 @@ package miniJava.AbstractSyntaxTrees;
 
 import miniJava.CodeGenerator.RuntimeEntity;
 import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SymbolTable;
 
 public abstract class Reference extends AST {
     public Reference(SourcePosition posn) {
@@ -14,6 +15,7 @@ public abstract class Reference extends AST {
     }
 
     public String spelling;
+    public int symbol = SymbolTable.NONE;
     public Declaration decl;
     public RuntimeEntity entity;
 }
@@ -303,35 +303,12 @@ public class Encoder implements Visitor<Integer, Object> {
 
         MethodDecl md = (MethodDecl) stmt.methodRef.decl;
 
-        // Request to print out
-        if (md == Analyzer.println) {
-            stmt.argList.get(0).visit(this, null);
-            Machine.emit(Prim.putintnl);
-            return null;
-        }
-
-        // Push parameters on (must iterate in reverse order)
-        for (int i = stmt.argList.size() - 1; i >= 0; i--) {
-            stmt.argList.get(i).visit(this, null);
-        }
-
-        // Call method directly
-        if (md.isStatic) {
-            patches.put(Machine.nextInstrAddr(), new Code(md, true));
-            Machine.emit(Op.CALL, Reg.CB, 0);
-        }
-
-        // Get address of qualified object
-        else {
-            if (stmt.methodRef instanceof QualifiedRef) {
-                QualifiedRef ref = (QualifiedRef) stmt.methodRef;
-                ref.ref.visit(this, null);
-            } else {
-                Machine.emit(Op.LOADA, Machine.addressSize, Reg.OB, 0);
-            }
-
-            patches.put(Machine.nextInstrAddr(), new Code(md, true));
-            Machine.emit(Op.CALLI, Reg.CB, 0);
+        // Primitive of a predefined class
+        if (isPrimitive(md)) {
+            callPrimitive(md, stmt.argList);
+        } else {
+            pushArguments(stmt.argList);
+            callMethod(md, stmt.methodRef);
         }
 
         // Clear off stack if necessary
@@ -456,27 +433,14 @@ public class Encoder implements Visitor<Integer, Object> {
 
         MethodDecl md = (MethodDecl) expr.functionRef.decl;
 
-        // Push parameters on (must iterate in reverse order)
-        for (int i = expr.argList.size() - 1; i >= 0; i--) {
-            expr.argList.get(i).visit(this, null);
+        // Primitive of a predefined class
+        if (isPrimitive(md)) {
+            callPrimitive(md, expr.argList);
+            return null;
         }
 
-        // Call Method
-        if (md.isStatic) {
-            patches.put(Machine.nextInstrAddr(), new Code(md, true));
-            Machine.emit(Op.CALL, Reg.CB, 0);
-        } else {
-
-            if (expr.functionRef instanceof QualifiedRef) {
-                QualifiedRef ref = (QualifiedRef) expr.functionRef;
-                ref.ref.visit(this, null);
-            } else {
-                Machine.emit(Op.LOADA, Machine.addressSize, Reg.OB, 0);
-            }
-
-            patches.put(Machine.nextInstrAddr(), new Code(md, true));
-            Machine.emit(Op.CALLI, Reg.CB, 0);
-        }
+        pushArguments(expr.argList);
+        callMethod(md, expr.functionRef);
 
         return null;
     }
@@ -714,4 +678,65 @@ public class Encoder implements Visitor<Integer, Object> {
         }
     }
 
+    /**
+     * 
+     * @param md
+     * @return true if md is a method of a predefined class, which is a
+     *         primitive of the machine
+     */
+    private boolean isPrimitive(MethodDecl md) {
+        return md.entity != null && md.entity.reg == Reg.PB;
+    }
+
+    /**
+     * Pushes the arguments in order and calls the primitive of md, with no
+     * instance
+     * 
+     * @param md
+     * @param args
+     */
+    private void callPrimitive(MethodDecl md, ExprList args) {
+        for (Expression e : args) {
+            e.visit(this, null);
+        }
+
+        Machine.emit(Machine.intToPrim[md.entity.addr]);
+    }
+
+    /**
+     * Pushes the arguments of a method call, last first
+     * 
+     * @param args
+     */
+    private void pushArguments(ExprList args) {
+        for (int i = args.size() - 1; i >= 0; i--) {
+            args.get(i).visit(this, null);
+        }
+    }
+
+    /**
+     * Calls a method whose arguments have been pushed: a static method
+     * directly, an instance method on the object it is qualified by, or on
+     * the current object
+     * 
+     * @param md
+     * @param ref
+     *            the reference the method was called through
+     */
+    private void callMethod(MethodDecl md, Reference ref) {
+        if (md.isStatic) {
+            patches.put(Machine.nextInstrAddr(), new Code(md, true));
+            Machine.emit(Op.CALL, Reg.CB, 0);
+        } else {
+            if (ref instanceof QualifiedRef) {
+                ((QualifiedRef) ref).ref.visit(this, null);
+            } else {
+                Machine.emit(Op.LOADA, Machine.addressSize, Reg.OB, 0);
+            }
+
+            patches.put(Machine.nextInstrAddr(), new Code(md, true));
+            Machine.emit(Op.CALLI, Reg.CB, 0);
+        }
+    }
+
 }
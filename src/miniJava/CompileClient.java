@@ -0,0 +1,105 @@
+package miniJava;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Compiles a file with a running CompileServer, with the output and exit
+ * code of Compiler.main: the compiler's messages on System.out, and exit
+ * code 0 if the file compiled and Compiler.rc if it did not. Without a
+ * server on the socket, the file is compiled in this JVM. If the server
+ * fails once it has been reached, the client reports the failure and exits
+ * with code 1, as a crashed compiler does, rather than compile the file
+ * again after some of its messages.
+ *
+ * usage: java miniJava.CompileClient [-socket path] file
+ */
+public class CompileClient {
+
+    /**
+     * Sends a compile request for fileName to the server at socket, echoing
+     * its messages on System.out
+     *
+     * @return the exit code of the compilation
+     * @throws IOException
+     *             if there is no server or it does not respond properly
+     */
+    public static int compile(Path socket, String fileName) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return compile(channel, fileName);
+        }
+    }
+
+    /**
+     * Sends a compile request for fileName on a connection to a server,
+     * echoing its messages on System.out
+     *
+     * @return the exit code of the compilation
+     * @throws IOException
+     *             if the server does not respond properly
+     */
+    static int compile(SocketChannel channel, String fileName) throws IOException {
+        PrintWriter request = new PrintWriter(new OutputStreamWriter(Channels.newOutputStream(channel)));
+        request.println("compile " + new File(fileName).getAbsolutePath());
+        request.flush();
+
+        BufferedReader response = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel)));
+        String line;
+        while ((line = response.readLine()) != null) {
+            if (line.startsWith("message ")) {
+                System.out.println(line.substring("message ".length()));
+            } else if (line.startsWith("exit ")) {
+                try {
+                    return Integer.parseInt(line.substring("exit ".length()));
+                } catch (NumberFormatException e) {
+                    throw new IOException("unexpected response " + line);
+                }
+            } else {
+                throw new IOException("unexpected response " + line);
+            }
+        }
+        throw new IOException("the response ended before the exit code");
+    }
+
+    public static void main(String[] args) {
+        Path socket = CompileServer.defaultSocket();
+        String fileName;
+        if (args.length == 1) {
+            fileName = args[0];
+        } else if (args.length == 3 && args[0].equals("-socket")) {
+            socket = new File(args[1]).toPath();
+            fileName = args[2];
+        } else {
+            System.out.println("No file specified");
+            System.exit(Compiler.rc);
+            return;
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            // no server
+            System.exit(Compiler.compile(fileName, System.out));
+            return;
+        }
+
+        int rc;
+        try (channel) {
+            rc = compile(channel, fileName);
+        } catch (IOException e) {
+            System.err.println("compile server on " + socket + " failed: " + e.getMessage());
+            rc = 1;
+        }
+        System.exit(rc);
+    }
+
+}
@@ -0,0 +1,191 @@
+package miniJava;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compiles miniJava files on request in a long running JVM, so that a build
+ * does not pay for JVM startup and a cold JIT on every compilation, and the
+ * predefined classes are parsed only once.
+ *
+ * Requests come from clients on a Unix domain socket, or with -stdio from
+ * standard input. Each request and response line is text:
+ *
+ * <pre>
+ * compile FILE    compiles FILE as Compiler.main would; the response is a line
+ *                 "message TEXT" for each line the compiler reports, then
+ *                 "exit CODE" with 0 or Compiler.rc
+ * ping            responds "ok"
+ * shutdown        responds "ok" and stops the server
+ * </pre>
+ *
+ * Other requests are answered with "error TEXT". A connection may carry any
+ * number of requests. Relative file names are resolved against the working
+ * directory of the server, so clients send absolute ones. Compilations run
+ * one at a time, in the order they arrive.
+ *
+ * usage: java miniJava.CompileServer [-socket path | -stdio]
+ */
+public class CompileServer {
+
+    private volatile boolean running = true;
+    private ServerSocketChannel server;
+
+    /**
+     * @return the socket path used when none is given: a file in the
+     *         temporary directory named after the user
+     */
+    public static Path defaultSocket() {
+        return new File(System.getProperty("java.io.tmpdir"), "miniJava-" + System.getProperty("user.name")
+                + ".sock").toPath();
+    }
+
+    /**
+     * Answers the requests on in until it ends or a shutdown request
+     *
+     * @return false after a shutdown request
+     */
+    boolean serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader requests = new BufferedReader(new InputStreamReader(in));
+        PrintWriter responses = new PrintWriter(new OutputStreamWriter(out));
+        String request;
+        while ((request = requests.readLine()) != null) {
+            if (request.startsWith("compile ")) {
+                compile(request.substring("compile ".length()), responses);
+            } else if (request.equals("ping")) {
+                responses.println("ok");
+            } else if (request.equals("shutdown")) {
+                responses.println("ok");
+                responses.flush();
+                return false;
+            } else {
+                responses.println("error unknown request " + request);
+            }
+            responses.flush();
+        }
+        return true;
+    }
+
+    private static void compile(String fileName, PrintWriter responses) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int rc;
+        try (PrintStream messages = new PrintStream(output, true)) {
+            rc = Compiler.compile(fileName, messages);
+        } catch (RuntimeException | StackOverflowError e) {
+            // a crash of the compiler, which ends a standalone compilation
+            // with exit code 1
+            output.write('\n');
+            output.writeBytes(e.toString().getBytes());
+            rc = 1;
+        }
+        for (String line : output.toString().split("\\R")) {
+            if (!line.isEmpty())
+                responses.println("message " + line);
+        }
+        responses.println("exit " + rc);
+    }
+
+    /**
+     * Accepts clients on the socket at path until a shutdown request,
+     * serving each on a thread of its own
+     */
+    void listen(Path path) throws IOException {
+        if (Files.exists(path)) {
+            boolean listening;
+            SocketChannel other = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                listening = other.connect(UnixDomainSocketAddress.of(path));
+            } catch (IOException e) {
+                listening = false;
+            } finally {
+                other.close();
+            }
+            if (listening)
+                throw new IOException("a server is already listening on " + path);
+            // left behind by a server that did not stop normally
+            Files.delete(path);
+        }
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        ExecutorService clients = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            while (running) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (IOException e) {
+                    // closed by a shutdown request
+                    break;
+                }
+                clients.execute(() -> {
+                    try (SocketChannel channel = client) {
+                        if (!serve(Channels.newInputStream(channel), Channels.newOutputStream(channel)))
+                            stop();
+                    } catch (IOException e) {
+                        // the client went away
+                    }
+                });
+            }
+        } finally {
+            clients.shutdownNow();
+            server.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void stop() throws IOException {
+        running = false;
+        server.close();
+    }
+
+    public static void main(String[] args) {
+        Path socket = defaultSocket();
+        boolean stdio = false;
+        if (args.length == 1 && args[0].equals("-stdio")) {
+            stdio = true;
+        } else if (args.length == 2 && args[0].equals("-socket")) {
+            socket = new File(args[1]).toPath();
+        } else if (args.length != 0) {
+            System.out.println("usage: java miniJava.CompileServer [-socket path | -stdio]");
+            System.exit(Compiler.rc);
+        }
+
+        try {
+            if (stdio) {
+                // keep stray output of the compiler out of the responses
+                PrintStream responses = System.out;
+                System.setOut(System.err);
+                new CompileServer().serve(System.in, responses);
+            } else {
+                System.out.println("miniJava compile server listening on " + socket);
+                new CompileServer().listen(socket);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(Compiler.rc);
+        }
+        System.exit(0);
+    }
+
+}
@@ -4,6 +4,7 @@ import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.io.PrintStream;
 
 import mJAM.Disassembler;
 import mJAM.Interpreter;
@@ -13,8 +14,10 @@ import miniJava.SyntacticAnalyzer.Parser;
 import miniJava.AbstractSyntaxTrees.Package;
 import miniJava.AbstractSyntaxTrees.ASTDisplay;
 import miniJava.CodeGenerator.Encoder;
+import miniJava.ContextualAnalyzer.AnalysisException;
 import miniJava.ContextualAnalyzer.IdTable;
 import miniJava.ContextualAnalyzer.Analyzer;
+import miniJava.ContextualAnalyzer.Environment;
 import miniJava.ContextualAnalyzer.Reporter;
 
 public class Compiler {
@@ -28,10 +31,48 @@ public class Compiler {
             System.exit(rc);
         }
 
-        try (FileReader input = new FileReader(args[0])) {
+        System.exit(compile(args[0], System.out));
+    }
+
+    /**
+     * Compiles a source file into an object file of the same name with the
+     * extension .mJAM. The compiler keeps its state in static fields, so
+     * compilations in the same class loader are run one at a time.
+     * 
+     * @param fileName
+     *            the source file
+     * @param messages
+     *            stream of the error messages
+     * @return 0 if the file compiled, rc if it did not
+     */
+    public static int compile(String fileName, PrintStream messages) {
+        return compile(fileName, messages, Environment.predefined());
+    }
+
+    /**
+     * Compiles a source file as compile(fileName, messages) does, with the
+     * given predefined classes
+     * 
+     * @param fileName
+     *            the source file
+     * @param messages
+     *            stream of the error messages
+     * @param environment
+     *            the predefined classes, such as Environment.predefined()
+     *            extended with built-in classes
+     * @return 0 if the file compiled, rc if it did not
+     */
+    public static synchronized int compile(String fileName, PrintStream messages, Environment environment) {
+
+        // Forget the previous compilation
+        Reporter.error = false;
+        Reporter.output = messages;
+        Analyzer.main = null;
+
+        try (FileReader input = new FileReader(fileName)) {
 
             // Setup
-            Scanner scanner = new Scanner(new BufferedReader(input));
+            Scanner scanner = new Scanner(new BufferedReader(input), environment.symbols());
             Parser parser = new Parser(scanner);
             Package p = parser.parse();
 
@@ -41,12 +82,12 @@ public class Compiler {
 
             // Contextual Analyzer
             IdTable table = new IdTable();
-            Analyzer analyzer = new Analyzer();
+            Analyzer analyzer = new Analyzer(environment);
             analyzer.visitPackage(p, table);
 
             // Compilation
             if (Reporter.error) {
-                System.exit(rc);
+                return rc;
             } else {
 
                 // Build mJAM assembly
@@ -54,23 +95,35 @@ public class Compiler {
                 encoder.visitPackage(p, null);
 
                 // Create object file
-                int pos = args[0].lastIndexOf(".java");
-                String objectFileName = args[0].substring(0, pos) + ".mJAM";
-                ObjectFile objF = new ObjectFile(objectFileName);
+                ObjectFile objF = new ObjectFile(objectFileName(fileName));
                 if (objF.write()) {
                     Reporter.emit("Object File Failed.");
                 }
             }
 
-            System.exit(0);
+            return 0;
 
         } catch (FileNotFoundException e) {
             Reporter.emit(e.getMessage());
         } catch (IOException e) {
             Reporter.emit(e.getMessage());
+        } catch (AnalysisException e) {
+            // already reported
         }
 
-        System.exit(rc);
+        return rc;
+    }
+
+    /**
+     * 
+     * @param fileName
+     *            a source file
+     * @return the object file compile writes for fileName: its name up to the
+     *         last ".java", with the extension .mJAM
+     */
+    public static String objectFileName(String fileName) {
+        int pos = fileName.lastIndexOf(".java");
+        return fileName.substring(0, pos) + ".mJAM";
     }
 
 }
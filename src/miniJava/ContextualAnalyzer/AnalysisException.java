@@ -0,0 +1,15 @@
+package miniJava.ContextualAnalyzer;
+
+/**
+ * Thrown by the analyzer when it cannot continue after an error, which has
+ * already been reported.
+ */
+public class AnalysisException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AnalysisException() {
+        super("Contextual analysis aborted");
+    }
+
+}
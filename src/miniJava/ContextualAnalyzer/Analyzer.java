@@ -1,13 +1,7 @@
 package miniJava.ContextualAnalyzer;
 
-import java.io.IOException;
-import java.util.ArrayList;
-
-import miniJava.Compiler;
 import miniJava.AbstractSyntaxTrees.*;
 import miniJava.AbstractSyntaxTrees.Package;
-import miniJava.SyntacticAnalyzer.Parser;
-import miniJava.SyntacticAnalyzer.Scanner;
 
 public class Analyzer implements Visitor<IdTable, Type> {
 
@@ -15,17 +9,9 @@ public class Analyzer implements Visitor<IdTable, Type> {
 
     // Required Methods
     public static MethodDecl main;
-    public static MethodDecl println;
-
-    // Predefined
-    private static ArrayList<String> predefined;
 
-    static {
-        predefined = new ArrayList<String>();
-        predefined.add("class String { }");
-        predefined.add("class _PrintStream { public void println(int n){} }");
-        predefined.add("class System { public static _PrintStream out; }");
-    }
+    // Predefined classes, analyzed once and shared by all compilations
+    private final Environment environment;
 
     // Keep Track Of Declarations
     private IdTable top = null;
@@ -33,6 +19,23 @@ public class Analyzer implements Visitor<IdTable, Type> {
     private ClassDecl currentClassDecl = null;
     private MethodDecl currentMethodDecl = null;
 
+    /**
+     * 
+     */
+    public Analyzer() {
+        this(Environment.predefined());
+    }
+
+    /**
+     * 
+     * @param environment
+     *            the predefined classes, whose names the program must have
+     *            been scanned with (see Environment.symbols)
+     */
+    public Analyzer(Environment environment) {
+        this.environment = environment;
+    }
+
     // /////////////////////////////////////////////////////////////////////////////
     //
     // PACKAGE
@@ -45,18 +48,8 @@ public class Analyzer implements Visitor<IdTable, Type> {
         top = table;
 
         // Begin predefinitions
-        try {
-            for (String pd : predefined) {
-                Scanner scanner = new Scanner(pd, true);
-                Parser parser = new Parser(scanner);
-                ClassDecl cd = parser.parseClassDeclaration();
-
-                addDeclarations(cd, table);
-                cd.visit(this, table);
-            }
-        } catch (IOException e) {
-            Reporter.emit("System Predefinitions Error!");
-            System.exit(Compiler.rc);
+        for (ClassDecl cd : environment.getClasses()) {
+            table.add(cd);
         }
 
         // Add all second level declarations
@@ -115,11 +108,6 @@ public class Analyzer implements Visitor<IdTable, Type> {
 
         currentMethodDecl = md;
 
-        // Save println method
-        if (println == null && md.name.equals("println")) {
-            println = md;
-        }
-
         // Save main method
         if (isMain(md)) {
             if (main != null) {
@@ -200,7 +188,7 @@ public class Analyzer implements Visitor<IdTable, Type> {
 
         // Must check that the type is valid
         String cn = type.className.spelling;
-        if (top.getDeclarationAtScope(cn) == null) {
+        if (top.getDeclarationAtScope(type.className.symbol) == null) {
             Reporter.emit("Class '" + cn + "' undeclared at " + type.posn);
         }
 
@@ -435,7 +423,7 @@ public class Analyzer implements Visitor<IdTable, Type> {
     public Type visitRefExpr(RefExpr expr, IdTable table) {
 
         Type refType = expr.ref.visit(this, table);
-        Declaration decl = table.getDeclaration(expr.ref.spelling);
+        Declaration decl = table.getDeclaration(expr.ref.symbol);
 
         // Should never reference a class name
         if (decl instanceof ClassDecl) {
@@ -551,20 +539,20 @@ public class Analyzer implements Visitor<IdTable, Type> {
 
         // Get member in question
         ClassType ct = (ClassType) refType;
-        ClassDecl cd = (ClassDecl) top.getDeclarationAtScope(ct.className.spelling);
+        ClassDecl cd = (ClassDecl) top.getDeclarationAtScope(ct.className.symbol);
         if (cd == null) {
             Reporter.emit("Accessing non-existant class at " + ct.posn);
             return new BaseType(TypeKind.ERROR, ref.posn);
         }
 
-        MemberDecl md = (MemberDecl) cd.table.getDeclarationAtScope(ref.id.spelling);
+        MemberDecl md = (MemberDecl) cd.table.getDeclarationAtScope(ref.id.symbol);
         if (md == null) {
             Reporter.emit("Accessing non-existant field at " + ref.id.posn);
             return new BaseType(TypeKind.ERROR, ref.posn);
         }
 
         // Check if static member
-        Declaration decl = table.getDeclaration(ref.ref.spelling);
+        Declaration decl = table.getDeclaration(ref.ref.symbol);
         if (decl instanceof ClassDecl && !md.isStatic) {
             Reporter.emit("Cannot access non-static member at " + ref.id.posn);
         }
@@ -577,6 +565,7 @@ public class Analyzer implements Visitor<IdTable, Type> {
         ref.decl = md;
         ref.id.decl = md;
         ref.spelling = ref.id.spelling;
+        ref.symbol = ref.id.symbol;
 
         return md.type;
     }
@@ -586,6 +575,7 @@ public class Analyzer implements Visitor<IdTable, Type> {
 
         Type refType = ref.ref.visit(this, table);
         ref.spelling = ref.ref.spelling;
+        ref.symbol = ref.ref.symbol;
 
         // Must be an array type
         if (refType.typeKind != TypeKind.ARRAY) {
@@ -604,7 +594,7 @@ public class Analyzer implements Visitor<IdTable, Type> {
         ArrayType at = (ArrayType) refType;
         if (at.eltType.typeKind == TypeKind.CLASS) {
             ClassType ct = (ClassType) at.eltType;
-            ref.decl = table.getDeclaration(ct.className.spelling);
+            ref.decl = table.getDeclaration(ct.className.symbol);
             return ref.decl.type;
         } else {
             ref.decl = null;
@@ -618,6 +608,7 @@ public class Analyzer implements Visitor<IdTable, Type> {
         ref.id.visit(this, table);
         ref.decl = ref.id.decl;
         ref.spelling = ref.id.spelling;
+        ref.symbol = ref.id.symbol;
 
         return ref.decl.type;
     }
@@ -644,15 +635,15 @@ public class Analyzer implements Visitor<IdTable, Type> {
     public Type visitIdentifier(Identifier id, IdTable table) {
 
         // An variable cannot be used in its declaration
-        if (currentVarDecl != null && currentVarDecl.name.equals(id.spelling)) {
+        if (currentVarDecl != null && currentVarDecl.symbol == id.symbol) {
             Reporter.emit("Cannot use variable in declaration at " + id.posn);
         }
 
         // Try to find declaration (and abort if not found)
-        id.decl = table.getDeclaration(id.spelling);
+        id.decl = table.getDeclaration(id.symbol);
         if (id.decl == null) {
             Reporter.emit(id.spelling + " undefined at " + id.posn);
-            System.exit(Compiler.rc);
+            throw new AnalysisException();
         }
 
         // Cannot access instance method from static context
@@ -710,6 +701,26 @@ public class Analyzer implements Visitor<IdTable, Type> {
     //
     // /////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Declares and analyzes the classes of an Environment
+     * 
+     * @param classes
+     * @param table
+     *            holding the classes they may refer to
+     */
+    void declare(ClassDeclList classes, IdTable table) {
+
+        top = table;
+
+        for (ClassDecl cd : classes) {
+            addDeclarations(cd, table);
+        }
+
+        for (ClassDecl cd : classes) {
+            cd.visit(this, table);
+        }
+    }
+
     /**
      * 
      * @param cd
@@ -0,0 +1,170 @@
+package miniJava.ContextualAnalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mJAM.Machine.Prim;
+import mJAM.Machine.Reg;
+import mJAM.Verifier;
+import miniJava.Compiler;
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.CodeGenerator.RuntimeEntity;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.SymbolTable;
+
+/**
+ * The predefined classes that every program sees, parsed and analyzed once
+ * and shared by any number of compilations, which only add the classes to
+ * their top IdTable. Each method of a predefined class is a primitive of
+ * the machine: a call evaluates the arguments in order, without the instance
+ * the method is called on, and then calls the primitive, whose entity is the
+ * primitive's offset from PB.
+ *
+ * An environment is immutable once built. Further built-in classes are added
+ * with extend, which returns a new environment.
+ */
+public final class Environment {
+
+    private static Environment predefined;
+
+    private final SymbolTable symbols;
+    private final List<ClassDecl> classes;
+
+    private Environment(SymbolTable symbols, List<ClassDecl> classes) {
+        this.symbols = symbols;
+        this.classes = classes;
+    }
+
+    /**
+     * 
+     * @return the environment of the classes every miniJava program sees
+     */
+    public static Environment predefined() {
+
+        // the lock analyze takes, which compilations already hold
+        synchronized (Compiler.class) {
+            if (predefined == null) {
+                Environment empty = new Environment(new SymbolTable(), Collections.<ClassDecl> emptyList());
+                Map<String, Prim> none = Collections.emptyMap();
+                try {
+                    // one class at a time, so that each is at line 1 in
+                    // messages, as it has always been
+                    predefined = empty.extend("class String { }", none)
+                            .extend("class _PrintStream { public void println(int n){} }",
+                                    Collections.singletonMap("_PrintStream.println", Prim.putintnl))
+                            .extend("class System { public static _PrintStream out; }", none);
+                } catch (IOException e) {
+                    throw new IllegalStateException("predefined classes do not compile: " + e.getMessage(), e);
+                }
+            }
+
+            return predefined;
+        }
+    }
+
+    /**
+     * Adds built-in classes. Their names may start with an underscore, as
+     * _PrintStream does, so that they cannot clash with those of programs.
+     * 
+     * @param source
+     *            the classes, in miniJava, which may refer to each other and
+     *            to the classes of this environment; method bodies are not
+     *            compiled
+     * @param primitives
+     *            the primitive behind each method of the classes, by
+     *            "class.method"
+     * @return a new environment with the classes of this one and of source
+     * @throws IOException
+     *             if source does not scan, parse or analyze
+     */
+    public Environment extend(String source, Map<String, Prim> primitives) throws IOException {
+
+        SymbolTable extended = new SymbolTable(symbols);
+        Package p = new Parser(new Scanner(source, true, extended)).parse();
+
+        HashMap<String, Prim> unused = new HashMap<String, Prim>(primitives);
+        for (ClassDecl cd : p.classDeclList) {
+            for (MethodDecl md : cd.methodDeclList) {
+                Prim prim = unused.remove(cd.name + "." + md.name);
+                if (prim == null)
+                    throw new IllegalArgumentException("no primitive for method " + cd.name + "." + md.name);
+                int size = (md.type.typeKind == TypeKind.VOID) ? 0 : 1;
+                int[] effect = Verifier.getEffect(prim);
+                if (effect[0] != md.parameterDeclList.size() || effect[1] != size)
+                    throw new IllegalArgumentException("primitive " + prim + " takes " + effect[0]
+                            + " arguments and returns " + effect[1] + " results, unlike method " + cd.name + "."
+                            + md.name);
+                md.entity = new RuntimeEntity(size, prim.ordinal(), Reg.PB);
+            }
+        }
+        if (!unused.isEmpty())
+            throw new IllegalArgumentException("no methods for primitives " + unused.keySet());
+
+        ArrayList<ClassDecl> all = new ArrayList<ClassDecl>(classes);
+        for (ClassDecl cd : p.classDeclList)
+            all.add(cd);
+        analyze(p.classDeclList);
+
+        return new Environment(extended, Collections.unmodifiableList(all));
+    }
+
+    /**
+     * 
+     * @return the classes, in the order they were added
+     */
+    public List<ClassDecl> getClasses() {
+        return classes;
+    }
+
+    /**
+     * 
+     * @return a new table with the names of the classes, to scan a program
+     *         with
+     */
+    public SymbolTable symbols() {
+        return new SymbolTable(symbols);
+    }
+
+    /**
+     * Declares and analyzes added classes, reporting to a buffer instead of
+     * the messages of a compilation. The Reporter is shared with
+     * compilations, which hold the Compiler class lock.
+     * 
+     * @param added
+     * @throws IOException
+     *             with the messages, if there are errors
+     */
+    private void analyze(ClassDeclList added) throws IOException {
+
+        synchronized (Compiler.class) {
+            boolean error = Reporter.error;
+            PrintStream output = Reporter.output;
+            MethodDecl main = Analyzer.main;
+            ByteArrayOutputStream messages = new ByteArrayOutputStream();
+            try {
+                Reporter.error = false;
+                Reporter.output = new PrintStream(messages, true);
+                IdTable table = new IdTable();
+                for (ClassDecl cd : classes)
+                    table.add(cd);
+                new Analyzer(this).declare(added, table);
+                if (Reporter.error)
+                    throw new IOException(messages.toString().trim());
+            } catch (AnalysisException e) {
+                throw new IOException(messages.toString().trim());
+            } finally {
+                Reporter.error = error;
+                Reporter.output = output;
+                Analyzer.main = main;
+            }
+        }
+    }
+}
@@ -1,18 +1,41 @@
 package miniJava.ContextualAnalyzer;
 
-import java.util.HashMap;
-import java.util.ArrayList;
-import miniJava.Compiler;
+import java.util.Arrays;
 
 import miniJava.AbstractSyntaxTrees.*;
 
 /**
+ * Declarations by the SymbolTable number of their name, in nested scopes.
  *
+ * The declarations of all scopes are kept in one array, in the order they
+ * were added, with a log of where each scope starts. A hash table, open
+ * addressed by symbol, holds the latest declaration of each name, and each
+ * declaration links to the one of the same name it shadows. Popping a scope
+ * undoes the declarations made since it was pushed, so push, pop, add and
+ * lookup take constant time and no scope allocates anything.
  */
 public class IdTable {
 
     private IdTable parent;
-    private ArrayList<HashMap<String, Declaration>> scope;
+
+    // declarations in the order they were added, the slot of each name, and
+    // the earlier declaration of the same name it hides, or -1
+    private Declaration[] decls = new Declaration[4];
+    private int[] declSlots = new int[4];
+    private int[] shadowed = new int[4];
+    private int count = 0;
+
+    // open addressing with linear probing: symbol + 1 of each slot, 0 if
+    // free, and the latest declaration of the symbol, or -1 if all its
+    // declarations have been popped. Slots are never freed; the capacity is
+    // a power of two, at most half full.
+    private int[] keys = new int[8];
+    private int[] latest = new int[8];
+    private int used = 0;
+
+    // count at the start of each scope
+    private int[] marks = new int[4];
+    private int depth = 0;
 
     // /////////////////////////////////////////////////////////////////////////////
     //
@@ -33,7 +56,6 @@ public class IdTable {
      */
     public IdTable(IdTable parent) {
         this.parent = parent;
-        this.scope = new ArrayList<>();
         push();
     }
 
@@ -47,45 +69,70 @@ public class IdTable {
      * 
      */
     public void pop() {
-        int last = scope.size() - 1;
-        scope.remove(last);
+        int mark = marks[--depth];
+        while (count > mark) {
+            count--;
+            latest[declSlots[count]] = shadowed[count];
+            decls[count] = null;
+        }
     }
 
     /**
      * 
      */
     public void push() {
-        HashMap<String, Declaration> nested = new HashMap<>();
-        scope.add(nested);
+        if (depth == marks.length)
+            marks = Arrays.copyOf(marks, 2 * depth);
+        marks[depth++] = count;
     }
 
     /**
      * 
      */
     public void add(Declaration decl) {
-        for (int i = 0; i < scope.size(); i++) {
-            HashMap<String, Declaration> nest = scope.get(i);
-            if (nest.containsKey(decl.name)) {
-
-                Declaration prev = nest.get(decl.name);
-
-                if (decl instanceof ClassDecl) {
-                    Reporter.report(decl, prev, "Class");
-                } else if (decl instanceof FieldDecl) {
-                    Reporter.report(decl, prev, "Field");
-                } else if (decl instanceof MethodDecl) {
-                    Reporter.report(decl, prev, "Method");
-                } else if (decl instanceof ParameterDecl) {
-                    Reporter.report(decl, prev, "Parameter");
-                } else if (decl instanceof VarDecl) {
-                    Reporter.report(decl, prev, "Variable");
-                }
-
-                System.exit(Compiler.rc);
+        if (decl.symbol < 0)
+            throw new IllegalArgumentException("declaration of " + decl.name + " without a symbol");
+
+        int slot = slot(decl.symbol);
+        if (keys[slot] == 0) {
+            keys[slot] = decl.symbol + 1;
+            latest[slot] = -1;
+            if (++used > keys.length >> 1) {
+                grow();
+                slot = slot(decl.symbol);
+            }
+        }
+
+        // Names may not be declared again in any scope of the table
+        if (latest[slot] >= 0) {
+
+            Declaration prev = decls[latest[slot]];
+
+            if (decl instanceof ClassDecl) {
+                Reporter.report(decl, prev, "Class");
+            } else if (decl instanceof FieldDecl) {
+                Reporter.report(decl, prev, "Field");
+            } else if (decl instanceof MethodDecl) {
+                Reporter.report(decl, prev, "Method");
+            } else if (decl instanceof ParameterDecl) {
+                Reporter.report(decl, prev, "Parameter");
+            } else if (decl instanceof VarDecl) {
+                Reporter.report(decl, prev, "Variable");
             }
+
+            throw new AnalysisException();
         }
 
-        scope.get(scope.size() - 1).put(decl.name, decl);
+        if (count == decls.length) {
+            decls = Arrays.copyOf(decls, 2 * count);
+            declSlots = Arrays.copyOf(declSlots, 2 * count);
+            shadowed = Arrays.copyOf(shadowed, 2 * count);
+        }
+        decls[count] = decl;
+        declSlots[count] = slot;
+        shadowed[count] = latest[slot];
+        latest[slot] = count;
+        count++;
     }
 
     // /////////////////////////////////////////////////////////////////////////////
@@ -96,12 +143,12 @@ public class IdTable {
 
     /**
      * 
-     * @param name
+     * @param symbol
      */
-    public Declaration getDeclaration(String name) {
+    public Declaration getDeclaration(int symbol) {
         IdTable current = this;
         while (current != null) {
-            Declaration decl = current.getDeclarationAtScope(name);
+            Declaration decl = current.getDeclarationAtScope(symbol);
             if (decl == null)
                 current = current.parent;
             else
@@ -113,15 +160,56 @@ public class IdTable {
 
     /**
      * 
-     * @param name
+     * @param symbol
      */
-    public Declaration getDeclarationAtScope(String name) {
-        for (int i = scope.size() - 1; i >= 0; i--) {
-            HashMap<String, Declaration> nest = scope.get(i);
-            if (nest.containsKey(name))
-                return nest.get(name);
-        }
+    public Declaration getDeclarationAtScope(int symbol) {
+        if (symbol < 0)
+            return null;
 
-        return null;
+        int slot = slot(symbol);
+        return (keys[slot] != 0 && latest[slot] >= 0) ? decls[latest[slot]] : null;
+    }
+
+    // /////////////////////////////////////////////////////////////////////////////
+    //
+    // HASHING
+    //
+    // /////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 
+     * @param symbol
+     * @return the slot of symbol, or the free slot where it belongs
+     */
+    private int slot(int symbol) {
+        int mask = keys.length - 1;
+        int hash = symbol * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != 0 && keys[slot] != symbol + 1)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Doubles the slots, moving each name and renumbering the slots of its
+     * declarations
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldLatest = latest;
+        keys = new int[2 * oldKeys.length];
+        latest = new int[2 * oldLatest.length];
+
+        int[] moved = new int[oldKeys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0)
+                continue;
+            int slot = slot(oldKeys[i] - 1);
+            keys[slot] = oldKeys[i];
+            latest[slot] = oldLatest[i];
+            moved[i] = slot;
+        }
+        for (int i = 0; i < count; i++)
+            declSlots[i] = moved[declSlots[i]];
     }
 }
@@ -1,18 +1,23 @@
 package miniJava.ContextualAnalyzer;
 
+import java.io.PrintStream;
+
 import miniJava.AbstractSyntaxTrees.Declaration;
 
 public class Reporter {
 
     public static boolean error = false;
 
+    // stream of the messages, System.out at the time of writing if null
+    public static PrintStream output = null;
+
     /**
      * 
      * @param message
      */
     public static void emit(String message) {
         error = true;
-        System.out.println("***" + message);
+        ((output != null) ? output : System.out).println("***" + message);
     }
 
     /**
@@ -1,7 +1,6 @@
 package miniJava.SyntacticAnalyzer;
 
 import java.io.IOException;
-import java.util.LinkedList;
 
 import miniJava.AbstractSyntaxTrees.*;
 import miniJava.AbstractSyntaxTrees.Package;
@@ -50,8 +49,15 @@ import miniJava.AbstractSyntaxTrees.Package;
  */
 public class Parser {
 
+    // most tokens the parser looks ahead, a power of two
+    private final static int LOOKAHEAD = 4;
+
     private Scanner scanner;
-    private LinkedList<Token> stream;
+
+    // circular buffer of the next count tokens, starting at head
+    private final Token[] stream = new Token[LOOKAHEAD];
+    private int head = 0;
+    private int count = 0;
 
     /**
      * 
@@ -59,7 +65,6 @@ public class Parser {
      */
     public Parser(Scanner scanner) {
         this.scanner = scanner;
-        this.stream = new LinkedList<Token>();
     }
 
     // /////////////////////////////////////////////////////////////////////////////
@@ -99,7 +104,8 @@ public class Parser {
 
         // Class Header
         Token classToken = accept(Token.TYPE.CLASS);
-        String className = accept(Token.TYPE.ID).spelling;
+        Token classId = accept(Token.TYPE.ID);
+        String className = classId.spelling;
 
         // Class Body
         accept(Token.TYPE.LBRACKET);
@@ -110,10 +116,11 @@ public class Parser {
         // Haven't reached end of body
         while (peek(1).type != Token.TYPE.RBRACKET) {
             Declarators d = parseDeclarators();
-            String memberName = accept(Token.TYPE.ID).spelling;
+            Token memberId = accept(Token.TYPE.ID);
 
             // Field Declaration
-            FieldDecl fd = new FieldDecl(d, memberName);
+            FieldDecl fd = new FieldDecl(d, memberId.spelling);
+            fd.symbol = memberId.symbol;
             if (peek(1).type == Token.TYPE.SEMICOLON) {
                 accept(Token.TYPE.SEMICOLON);
                 fdl.add(fd);
@@ -130,7 +137,8 @@ public class Parser {
 
         // Build Class
         ClassDecl decl = new ClassDecl(className, fdl, mdl, classToken.posn);
-        Identifier ident = new Identifier(className, classToken.posn);
+        decl.symbol = classId.symbol;
+        Identifier ident = new Identifier(className, classId.symbol, classToken.posn);
         decl.type = new ClassType(ident, classToken.posn);
 
         return decl;
@@ -244,7 +252,7 @@ public class Parser {
 
         case ID: {
             Token next = accept(Token.TYPE.ID);
-            Identifier ident = new Identifier(next.spelling, next.posn);
+            Identifier ident = new Identifier(next.spelling, next.symbol, next.posn);
             ClassType ct = new ClassType(ident, ident.posn);
 
             if (peek(1).type == Token.TYPE.LSQUARE) {
@@ -281,14 +289,18 @@ public class Parser {
         // First Parameter
         Type fpt = parseType();
         Token next = accept(Token.TYPE.ID);
-        decls.add(new ParameterDecl(fpt, next.spelling, fpt.posn));
+        ParameterDecl first = new ParameterDecl(fpt, next.spelling, fpt.posn);
+        first.symbol = next.symbol;
+        decls.add(first);
 
         // Remainder of List
         while (peek(1).type == Token.TYPE.COMMA) {
             accept(Token.TYPE.COMMA);
             Type type = parseType();
             Token id = accept(Token.TYPE.ID);
-            decls.add(new ParameterDecl(type, id.spelling, type.posn));
+            ParameterDecl pd = new ParameterDecl(type, id.spelling, type.posn);
+            pd.symbol = id.symbol;
+            decls.add(pd);
         }
 
         return decls;
@@ -331,7 +343,7 @@ public class Parser {
         while (peek(1).type == Token.TYPE.PERIOD) {
             accept(Token.TYPE.PERIOD);
             Token next = accept(Token.TYPE.ID);
-            Identifier ident = new Identifier(next.spelling, next.posn);
+            Identifier ident = new Identifier(next.spelling, next.symbol, next.posn);
             ref = new QualifiedRef(ref, ident, next.posn);
 
             // Must be indexed
@@ -359,7 +371,7 @@ public class Parser {
         }
 
         Token next = accept(Token.TYPE.ID);
-        Identifier ident = new Identifier(next.spelling, next.posn);
+        Identifier ident = new Identifier(next.spelling, next.symbol, next.posn);
         IdRef ref = new IdRef(ident, ident.posn);
 
         // Must be indexed
@@ -453,8 +465,9 @@ public class Parser {
     private Statement parseVarDeclStatement() throws IOException {
 
         Type type = parseType();
-        String name = accept(Token.TYPE.ID).spelling;
-        VarDecl v = new VarDecl(type, name, type.posn);
+        Token name = accept(Token.TYPE.ID);
+        VarDecl v = new VarDecl(type, name.spelling, type.posn);
+        v.symbol = name.symbol;
 
         accept(Token.TYPE.EQUALS);
         Expression expr = parseExpression();
@@ -606,7 +619,7 @@ public class Parser {
 
             else {
                 Token id = accept(Token.TYPE.ID);
-                Identifier ident = new Identifier(id.spelling, id.posn);
+                Identifier ident = new Identifier(id.spelling, id.symbol, id.posn);
                 ClassType ct = new ClassType(ident, id.posn);
 
                 if (peek(1).type == Token.TYPE.LPAREN) {
@@ -775,13 +788,16 @@ public class Parser {
      */
     private Token peek(int lookahead) throws IOException {
 
+        if (lookahead < 1 || lookahead > LOOKAHEAD)
+            throw new IllegalArgumentException("lookahead " + lookahead + " outside 1.." + LOOKAHEAD);
+
         // Cache tokens
-        while (stream.size() < lookahead) {
-            Token next = scanner.scan();
-            stream.addLast(next);
+        while (count < lookahead) {
+            stream[(head + count) & (LOOKAHEAD - 1)] = scanner.scan();
+            count++;
         }
 
-        return stream.get(lookahead - 1);
+        return stream[(head + lookahead - 1) & (LOOKAHEAD - 1)];
     }
 
     /**
@@ -793,9 +809,11 @@ public class Parser {
     private Token accept(Token.TYPE type) throws IOException {
 
         Token next = peek(1);
-        if (next.type == type)
-            stream.poll();
-        else
+        if (next.type == type) {
+            stream[head] = null;
+            head = (head + 1) & (LOOKAHEAD - 1);
+            count--;
+        } else
             throw new ParsingException(next.posn);
 
         return next;
@@ -1,20 +1,47 @@
 package miniJava.SyntacticAnalyzer;
 
 import java.io.*;
-
+import java.util.Arrays;
+
+/**
+ * Tokenizes a source held in memory. The whole input is read into a char
+ * array up front and scanned by index, so that a token costs no more than
+ * the Token and its SourcePosition: operator spellings are constants,
+ * keywords are recognized in place, and identifiers and numbers are taken
+ * from their slice of the input through a SymbolTable, which only allocates
+ * a spelling the first time it is seen.
+ *
+ * A program that is to be analyzed must be scanned with the SymbolTable of
+ * Environment.symbols, so that its names are numbered like those of the
+ * predefined classes.
+ */
 public class Scanner {
 
-    private int col = 1;
     private int line = 1;
-    private boolean predefined;
-    private BufferedReader input;
+    private int lineStart = 0;
+    private int pos = 0;
+    private final boolean predefined;
+    private final char[] source;
+    private final int end;
+    private final SymbolTable symbols;
+
+    /**
+     * 
+     * @param input
+     * @throws IOException
+     */
+    public Scanner(BufferedReader input) throws IOException {
+        this(input, false, new SymbolTable());
+    }
 
     /**
      * 
      * @param input
+     * @param symbols
+     * @throws IOException
      */
-    public Scanner(BufferedReader input) {
-        this(input, false);
+    public Scanner(BufferedReader input, SymbolTable symbols) throws IOException {
+        this(input, false, symbols);
     }
 
     /**
@@ -23,17 +50,58 @@ public class Scanner {
      * @param predefined
      */
     public Scanner(String input, boolean predefined) {
-        this(new BufferedReader(new StringReader(input)), predefined);
+        this(input, predefined, new SymbolTable());
     }
 
     /**
      * 
      * @param input
      * @param predefined
+     * @param symbols
      */
-    public Scanner(BufferedReader input, boolean predefined) {
-        this.input = input;
+    public Scanner(String input, boolean predefined, SymbolTable symbols) {
+        this(input.toCharArray(), input.length(), predefined, symbols);
+    }
+
+    /**
+     * 
+     * @param input
+     * @param predefined
+     * @param symbols
+     * @throws IOException
+     */
+    public Scanner(BufferedReader input, boolean predefined, SymbolTable symbols) throws IOException {
+        char[] buffer = new char[8192];
+        int length = 0, count;
+        while ((count = input.read(buffer, length, buffer.length - length)) >= 0) {
+            length += count;
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, 2 * length);
+        }
+
+        this.source = buffer;
+        this.end = length;
         this.predefined = predefined;
+        this.symbols = symbols;
+    }
+
+    /**
+     * 
+     * @param source
+     *            the characters to scan, which the scanner does not copy
+     * @param length
+     *            number of characters of source to scan
+     * @param predefined
+     * @param symbols
+     *            table of the spellings of identifiers and numbers
+     */
+    public Scanner(char[] source, int length, boolean predefined, SymbolTable symbols) {
+        if (length < 0 || length > source.length)
+            throw new IllegalArgumentException("length " + length + " outside the source");
+        this.source = source;
+        this.end = length;
+        this.predefined = predefined;
+        this.symbols = symbols;
     }
 
     // /////////////////////////////////////////////////////////////////////////////
@@ -48,150 +116,126 @@ public class Scanner {
      * @throws IOException
      */
     public Token scan() throws IOException {
-        Token token = null;
-        String spelling = "";
-
-        while (token == null) {
-
-            int c = read();
-            SourcePosition posn = new SourcePosition(col, line);
 
-            if (c == -1) {
-                token = new Token("", Token.TYPE.EOT, posn);
-            } else {
-                spelling += (char) c;
-
-                switch (c) {
-
-                // Operators
-                case '*':
-                case '+':
-                case '-': {
-                    if (peek(c))
-                        throw new ScanningException(posn);
-                    token = new Token(spelling, Token.TYPE.BINOP, posn);
-                    break;
+        while (true) {
+
+            if (pos == end)
+                return new Token("", Token.TYPE.EOT, position(pos));
+
+            int start = pos;
+            char c = source[pos++];
+
+            switch (c) {
+
+            // Whitespace
+            case '\n':
+            case '\r':
+                newLine(pos);
+                break;
+
+            case ' ':
+            case '\t':
+                break;
+
+            // Operators
+            case '*':
+                return operator(start, '*', "*");
+            case '+':
+                return operator(start, '+', "+");
+            case '-':
+                return operator(start, '-', "-");
+
+                // Comment
+            case '/': {
+                if (peek('*')) {
+                    pos++;
+                    readMultiLineComment();
+                } else if (peek('/')) {
+                    readSingleLineComment();
+                } else {
+                    return new Token("/", Token.TYPE.BINOP, position(start));
                 }
 
-                    // Comment
-                case '/': {
-                    if (peek('*')) {
-                        read();
-                        readMultiLineComment();
-                        spelling = "";
-                    } else if (peek('/')) {
-                        readSingleLineComment();
-                        spelling = "";
-                    } else {
-                        token = new Token(spelling, Token.TYPE.BINOP, posn);
-                    }
-
-                    break;
-                }
-
-                    // Relational
-                case '>':
-                case '<': {
-                    if (peek('='))
-                        spelling += (char) read();
-                    token = new Token(spelling, Token.TYPE.BINOP, posn);
-                    break;
-                }
+                break;
+            }
 
-                    // Negation
-                case '!': {
-                    if (peek('=')) {
-                        spelling += (char) read();
-                        token = new Token(spelling, Token.TYPE.BINOP, posn);
-                    } else {
-                        token = new Token(spelling, Token.TYPE.UNOP, posn);
-                    }
+                // Relational
+            case '>':
+                return peekAccept('=') ? binop(start, ">=") : binop(start, ">");
+            case '<':
+                return peekAccept('=') ? binop(start, "<=") : binop(start, "<");
+
+                // Negation
+            case '!': {
+                if (peekAccept('='))
+                    return binop(start, "!=");
+                return new Token("!", Token.TYPE.UNOP, position(start));
+            }
 
-                    break;
-                }
+                // Logical
+            case '&':
+                return logical(start, '&', "&&");
+            case '|':
+                return logical(start, '|', "||");
+
+                // Other Operators
+            case '=': {
+                if (peekAccept('='))
+                    return binop(start, "==");
+                return new Token("=", Token.TYPE.EQUALS, position(start));
+            }
 
-                    // Logical
-                case '&':
-                case '|': {
-                    if (!peek(c)) {
-                        throw new ScanningException(posn);
-                    } else {
-                        spelling += (char) read();
-                        token = new Token(spelling, Token.TYPE.BINOP, posn);
-                    }
-
-                    break;
+                // Miscellaneous
+            case '.':
+                return new Token(".", Token.TYPE.PERIOD, position(start));
+            case ',':
+                return new Token(",", Token.TYPE.COMMA, position(start));
+            case '[':
+                return new Token("[", Token.TYPE.LSQUARE, position(start));
+            case ']':
+                return new Token("]", Token.TYPE.RSQUARE, position(start));
+            case '{':
+                return new Token("{", Token.TYPE.LBRACKET, position(start));
+            case '}':
+                return new Token("}", Token.TYPE.RBRACKET, position(start));
+            case '(':
+                return new Token("(", Token.TYPE.LPAREN, position(start));
+            case ')':
+                return new Token(")", Token.TYPE.RPAREN, position(start));
+            case ';':
+                return new Token(";", Token.TYPE.SEMICOLON, position(start));
+
+            default: {
+
+                // Identifier or keyword
+                if (isAlpha(c)) {
+                    while (pos < end && (isAlpha(source[pos]) || isDigit(source[pos]) || source[pos] == '_'))
+                        pos++;
+
+                    Token.TYPE keyword = Token.keyword(source, start, pos - start);
+                    if (keyword != null)
+                        return new Token(Token.spelling(keyword), keyword, position(start));
+
+                    int symbol = symbols.intern(source, start, pos - start);
+                    return new Token(symbols.spelling(symbol), Token.TYPE.ID, position(start), symbol);
                 }
 
-                    // Other Operators
-                case '=': {
-                    if (peek('=')) {
-                        spelling += (char) read();
-                        token = new Token(spelling, Token.TYPE.BINOP, posn);
-                    } else {
-                        token = new Token(spelling, Token.TYPE.EQUALS, posn);
-                    }
+                // Number
+                else if (isDigit(c)) {
+                    while (pos < end && isDigit(source[pos]))
+                        pos++;
 
-                    break;
+                    int symbol = symbols.intern(source, start, pos - start);
+                    return new Token(symbols.spelling(symbol), Token.TYPE.NUM, position(start), symbol);
                 }
 
-                    // Miscellaneous
-                case '.':
-                case ',':
-                case '[':
-                case ']':
-                case '{':
-                case '}':
-                case '(':
-                case ')':
-                case ';': {
-                    token = new Token(spelling, Token.symbols.get(c), posn);
-                    break;
-                }
-
-                default: {
-
-                    // Identifier or keyword
-                    if (isAlpha(c)) {
-                        int next = peek();
-                        while (isAlpha(next) || isDigit(next) || next == '_') {
-                            spelling += (char) read();
-                            next = peek();
-                        }
-
-                        if (Token.keywords.containsKey(spelling)) {
-                            token = new Token(spelling, Token.keywords.get(spelling), posn);
-                        } else {
-                            token = new Token(spelling, Token.TYPE.ID, posn);
-                        }
-                    }
-
-                    // Number
-                    else if (isDigit(c)) {
-                        int next = peek();
-                        while (isDigit(next)) {
-                            spelling += (char) read();
-                            next = peek();
-                        }
-
-                        token = new Token(spelling, Token.TYPE.NUM, posn);
-                    }
-
-                    // Whitespace
-                    else if (isWhitespace(c)) {
-                        spelling = "";
-                    }
-
-                    // Unrecognized Character
-                    else {
-                        throw new ScanningException(posn);
-                    }
-                }
+                // Unrecognized Character
+                else {
+                    throw new ScanningException(position(start));
                 }
             }
+            }
         }
-
-        return token;
     }
 
     // /////////////////////////////////////////////////////////////////////////////
@@ -219,85 +263,120 @@ public class Scanner {
     }
 
     /**
+     * Position of the token starting at index start of the source, in the
+     * columns the scanner has always reported: one more than the 1-based
+     * column of the token
      * 
-     * @param c
+     * @param start
      * @return
      */
-    private boolean isWhitespace(int c) {
-        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    private SourcePosition position(int start) {
+        return new SourcePosition(start - lineStart + 2, line);
     }
 
     /**
+     * Starts a new line at index next of the source
      * 
-     * @return
-     * @throws IOException
+     * @param next
      */
-    private int peek() throws IOException {
-        input.mark(1);
-        int next = input.read();
-        input.reset();
-
-        return next;
+    private void newLine(int next) {
+        line += 1;
+        lineStart = next;
     }
 
     /**
      * 
      * @param c
      * @return
-     * @throws IOException
      */
-    private boolean peek(int c) throws IOException {
-        input.mark(1);
-        int next = input.read();
-        input.reset();
+    private boolean peek(char c) {
+        return pos < end && source[pos] == c;
+    }
 
-        return c == next;
+    /**
+     * Consumes the next character if it is c
+     * 
+     * @param c
+     * @return
+     */
+    private boolean peekAccept(char c) {
+        if (!peek(c))
+            return false;
+        pos++;
+        return true;
     }
 
     /**
      * 
+     * @param start
+     * @param spelling
      * @return
-     * @throws IOException
      */
-    private int read() throws IOException {
-        int next = input.read();
-        if (next == '\n' || next == '\r') {
-            col = 1;
-            line += 1;
-        } else {
-            col += 1;
-        }
+    private Token binop(int start, String spelling) {
+        return new Token(spelling, Token.TYPE.BINOP, position(start));
+    }
 
-        return next;
+    /**
+     * An arithmetic operator, which may not be doubled
+     * 
+     * @param start
+     * @param c
+     * @param spelling
+     * @return
+     * @throws ScanningException
+     */
+    private Token operator(int start, char c, String spelling) throws ScanningException {
+        if (peek(c))
+            throw new ScanningException(position(start));
+        return binop(start, spelling);
     }
 
     /**
+     * A logical operator, which must be doubled
      * 
-     * @throws IOException
+     * @param start
+     * @param c
+     * @param spelling
+     * @return
+     * @throws ScanningException
      */
-    private void readSingleLineComment() throws IOException {
-        col = 1;
-        line += 1;
-        input.readLine();
+    private Token logical(int start, char c, String spelling) throws ScanningException {
+        if (!peekAccept(c))
+            throw new ScanningException(position(start));
+        return binop(start, spelling);
+    }
+
+    /**
+     * Skips the rest of the line and its line terminator
+     */
+    private void readSingleLineComment() {
+        while (pos < end && source[pos] != '\n' && source[pos] != '\r')
+            pos++;
+        if (pos < end && source[pos++] == '\r' && pos < end && source[pos] == '\n')
+            pos++;
+        newLine(pos);
     }
 
     /**
      * 
-     * @throws IOException
+     * @throws ScanningException
      */
-    private void readMultiLineComment() throws IOException {
-        int prev = '\0';
-        int current = '\0';
+    private void readMultiLineComment() throws ScanningException {
+        char prev = '\0';
+        char current = '\0';
 
         while (prev != '*' || current != '/') {
-            prev = current;
-            current = read();
 
             // Unterminated
-            if (current == -1) {
-                SourcePosition posn = new SourcePosition(line, col);
+            if (pos == end) {
+                SourcePosition posn = new SourcePosition(line, end - lineStart + 2);
                 throw new ScanningException(posn);
             }
+
+            prev = current;
+            current = source[pos++];
+            if (current == '\n' || current == '\r')
+                newLine(pos);
         }
     }
 }
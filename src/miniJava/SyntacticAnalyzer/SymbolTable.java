@@ -0,0 +1,138 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.util.Arrays;
+
+/**
+ * Interns the spellings of identifiers and numbers, looked up by their slice
+ * of the source, so that the Scanner allocates a String only for the first
+ * occurrence of each spelling and equal spellings share one String.
+ *
+ * Each spelling is numbered in the order it is first seen. Identifiers and
+ * declarations carry the number of their name, so that later phases compare
+ * and look up names as ints. Numbers are only comparable between spellings
+ * of the same table, or of tables copied from it: the predefined classes are
+ * scanned into one table, and each program into a copy of it.
+ */
+public final class SymbolTable {
+
+    // number of nothing: a name that was not scanned, such as this
+    public final static int NONE = -1;
+
+    // open addressing with linear probing, holding symbol numbers + 1 so that
+    // 0 is free; the capacity is a power of two, at most 3/4 full
+    private int[] slots = new int[256];
+    private int[] hashes = new int[256];
+
+    // spelling of each symbol number
+    private String[] spellings = new String[192];
+    private int size = 0;
+
+    /**
+     * 
+     */
+    public SymbolTable() {
+    }
+
+    /**
+     * A table with the symbols of base, under the same numbers
+     * 
+     * @param base
+     */
+    public SymbolTable(SymbolTable base) {
+        slots = base.slots.clone();
+        hashes = base.hashes.clone();
+        spellings = base.spellings.clone();
+        size = base.size;
+    }
+
+    /**
+     * 
+     * @param source
+     * @param start
+     * @param length
+     * @return the number of the spelling source[start, start + length)
+     */
+    public int intern(char[] source, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++)
+            hash = 31 * hash + source[i];
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            int symbol = slots[slot] - 1;
+            if (symbol == NONE) {
+                if (size == spellings.length)
+                    spellings = Arrays.copyOf(spellings, 2 * size);
+                symbol = size++;
+                spellings[symbol] = new String(source, start, length);
+                slots[slot] = symbol + 1;
+                hashes[slot] = hash;
+                if (size > slots.length - (slots.length >> 2))
+                    grow();
+                return symbol;
+            }
+            if (hashes[slot] == hash && matches(spellings[symbol], source, start, length))
+                return symbol;
+        }
+    }
+
+    /**
+     * 
+     * @param spelling
+     * @return the number of spelling, which is added if it is new
+     */
+    public int intern(String spelling) {
+        return intern(spelling.toCharArray(), 0, spelling.length());
+    }
+
+    /**
+     * 
+     * @param symbol
+     * @return the spelling with the given number
+     */
+    public String spelling(int symbol) {
+        if (symbol < 0 || symbol >= size)
+            throw new IllegalArgumentException("no symbol " + symbol);
+        return spellings[symbol];
+    }
+
+    /**
+     * @return number of distinct spellings interned
+     */
+    public int size() {
+        return size;
+    }
+
+    private static boolean matches(String spelling, char[] source, int start, int length) {
+        if (spelling.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (spelling.charAt(i) != source[start + i])
+                return false;
+        }
+        return true;
+    }
+
+    // spreads the low bits of String hashes, which are poor for short names
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        int[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        slots = new int[2 * oldSlots.length];
+        hashes = new int[2 * oldHashes.length];
+        int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] == 0)
+                continue;
+            int slot = mix(oldHashes[i]) & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = oldSlots[i];
+            hashes[slot] = oldHashes[i];
+        }
+    }
+}
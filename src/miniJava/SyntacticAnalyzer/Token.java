@@ -1,7 +1,5 @@
 package miniJava.SyntacticAnalyzer;
 
-import java.util.HashMap;
-
 /**
  *
  */
@@ -19,51 +17,140 @@ public class Token {
         EOT
     };
 
-    // Pair words with enumeration
-    public final static HashMap<String, TYPE> keywords;
+    // Spellings of the keywords, by type
+    private final static String[] keywords = new String[TYPE.values().length];
 
     static {
-        keywords = new HashMap<String, TYPE>();
-        keywords.put("class", TYPE.CLASS);
-        keywords.put("return", TYPE.RETURN);
-        keywords.put("public", TYPE.PUBLIC);
-        keywords.put("private", TYPE.PRIVATE);
-        keywords.put("static", TYPE.STATIC);
-        keywords.put("int", TYPE.INT);
-        keywords.put("boolean", TYPE.BOOLEAN);
-        keywords.put("void", TYPE.VOID);
-        keywords.put("this", TYPE.THIS);
-        keywords.put("if", TYPE.IF);
-        keywords.put("else", TYPE.ELSE);
-        keywords.put("while", TYPE.WHILE);
-        keywords.put("true", TYPE.TRUE);
-        keywords.put("false", TYPE.FALSE);
-        keywords.put("new", TYPE.NEW);
+        for (TYPE type : TYPE.values()) {
+            if (type.compareTo(TYPE.IF) >= 0 && type.compareTo(TYPE.PRIVATE) <= 0)
+                keywords[type.ordinal()] = type.name().toLowerCase();
+        }
+    }
+
+    /**
+     * 
+     * @param keyword
+     * @return the spelling of keyword, or null if it is not a keyword type
+     */
+    public static String spelling(TYPE keyword) {
+        return keywords[keyword.ordinal()];
     }
 
-    // Pair symbols with enumeration
-    public final static HashMap<Integer, TYPE> symbols;
+    /**
+     * Recognizes keywords by their length and first character, without
+     * building a String for the spelling
+     * 
+     * @param source
+     * @param start
+     * @param length
+     * @return the type of the keyword source[start, start + length), or null
+     *         if it is not one
+     */
+    public static TYPE keyword(char[] source, int start, int length) {
+        String word;
+        TYPE type;
+        switch (length) {
+        case 2:
+            word = "if";
+            type = TYPE.IF;
+            break;
+        case 3:
+            if (source[start] == 'i') {
+                word = "int";
+                type = TYPE.INT;
+            } else {
+                word = "new";
+                type = TYPE.NEW;
+            }
+            break;
+        case 4:
+            switch (source[start]) {
+            case 'e':
+                word = "else";
+                type = TYPE.ELSE;
+                break;
+            case 't':
+                if (source[start + 1] == 'h') {
+                    word = "this";
+                    type = TYPE.THIS;
+                } else {
+                    word = "true";
+                    type = TYPE.TRUE;
+                }
+                break;
+            default:
+                word = "void";
+                type = TYPE.VOID;
+                break;
+            }
+            break;
+        case 5:
+            switch (source[start]) {
+            case 'c':
+                word = "class";
+                type = TYPE.CLASS;
+                break;
+            case 'f':
+                word = "false";
+                type = TYPE.FALSE;
+                break;
+            default:
+                word = "while";
+                type = TYPE.WHILE;
+                break;
+            }
+            break;
+        case 6:
+            switch (source[start]) {
+            case 'r':
+                word = "return";
+                type = TYPE.RETURN;
+                break;
+            case 's':
+                word = "static";
+                type = TYPE.STATIC;
+                break;
+            default:
+                word = "public";
+                type = TYPE.PUBLIC;
+                break;
+            }
+            break;
+        case 7:
+            if (source[start] == 'b') {
+                word = "boolean";
+                type = TYPE.BOOLEAN;
+            } else {
+                word = "private";
+                type = TYPE.PRIVATE;
+            }
+            break;
+        default:
+            return null;
+        }
 
-    static {
-        symbols = new HashMap<Integer, TYPE>();
-        symbols.put((int) '.', TYPE.PERIOD);
-        symbols.put((int) ',', TYPE.COMMA);
-        symbols.put((int) '[', TYPE.LSQUARE);
-        symbols.put((int) ']', TYPE.RSQUARE);
-        symbols.put((int) '{', TYPE.LBRACKET);
-        symbols.put((int) '}', TYPE.RBRACKET);
-        symbols.put((int) '(', TYPE.LPAREN);
-        symbols.put((int) ')', TYPE.RPAREN);
-        symbols.put((int) ';', TYPE.SEMICOLON);
+        for (int i = 0; i < length; i++) {
+            if (source[start + i] != word.charAt(i))
+                return null;
+        }
+        return type;
     }
 
     public final TYPE type;
     public final String spelling;
     public final SourcePosition posn;
 
+    // SymbolTable number of the spelling of an identifier or number
+    public final int symbol;
+
     public Token(String spelling, TYPE type, SourcePosition posn) {
+        this(spelling, type, posn, SymbolTable.NONE);
+    }
+
+    public Token(String spelling, TYPE type, SourcePosition posn, int symbol) {
         this.type = type;
         this.posn = posn;
         this.spelling = spelling;
+        this.symbol = symbol;
     }
 }
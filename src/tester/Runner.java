@@ -0,0 +1,585 @@
+package tester;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import mJAM.InputSource;
+import mJAM.Interpreter;
+import mJAM.OutputSink;
+import mJAM.Result;
+import mJAM.Status;
+
+/* In-process regression tester for the Checkpoint 1-4 tests
+ * Compiles the test programs with miniJava.Compiler.compile instead of a
+ * process per test, on a work-stealing pool of worker threads, and runs the
+ * compiled pass tests in an mJAM.Interpreter as Checkpoint4 does.
+ *
+ * The compiler keeps its state in static fields, so every worker thread loads
+ * the miniJava and mJAM classes in a class loader of its own; the Interpreter
+ * is instance based and is run from the runner's classes.
+ *
+ * Tests follow the naming conventions of the Checkpoint testers: a file whose
+ * name contains "pass" must compile, any other file must fail with
+ * Compiler.rc, and the value an executed pass test prints first is expected
+ * in characters 5 and 6 of its name (pass401.java prints 1).
+ *
+ * An executed pass test must halt, unless a line "//@ status NAME" of its
+ * source names the Status it must end with instead. A line "//@ limit
+ * millis" limits the time of its run. If there is a file with the name of
+ * the test and ".out" appended, as for the Checkpoint2 ASTs, the output of
+ * the run (the values printed, the status and the machine state dumped on a
+ * failure) must be the contents of that file.
+ *
+ * Programs are interpreted, or with -jit compiled to JVM bytecode from the
+ * start, or with -tiered compiled once they are hot, with thresholds low
+ * enough for short tests to change tiers. Every engine must produce the same
+ * results, so the same tests and expected output apply to all of them.
+ *
+ * usage: java tester.Runner [-threads n] [-timeout millis] [-execute]
+ *        [-jit | -tiered] [-xml file] [-json file] [testDirectory ...]
+ * Without test directories, the "tests/paN_tests" folders next to the class
+ * path are run, executing the programs of pa4_tests.
+ */
+public class Runner {
+
+    public static final int DEFAULT_TIMEOUT = 10000;
+
+    // thresholds of -tiered
+    static final int TIERED_INVOCATIONS = 2, TIERED_BACK_EDGES = 10;
+
+    // exit code of a compiler that threw an exception, as for java
+    static final int CRASHED = 1;
+
+    // how a test ended
+    enum Outcome {
+        PASSED, FAILED, TIMEOUT, ERROR
+    }
+
+    // how programs are run
+    enum Engine {
+        INTERPRETED, COMPILED, TIERED
+    }
+
+    static class Test {
+        final String suite, name;
+        final File file;
+        final boolean pass, execute;
+
+        Outcome outcome;
+        String message;
+        // compiler exit code, first value printed, final machine status
+        int returnCode = -1, value = -1;
+        Status status;
+        String output = "";
+        long nanos;
+
+        // status the run must end with, its time limit in milliseconds or 0,
+        // and its output, if any is expected
+        Status expectedStatus = Status.HALTED;
+        long limit;
+        String expectedOutput;
+        String runOutput;
+
+        Test(String suite, File file, boolean execute) {
+            this.suite = suite;
+            this.file = file;
+            this.name = file.getName();
+            this.pass = name.indexOf("pass") != -1;
+            this.execute = execute && pass;
+        }
+    }
+
+    private final int timeout;
+    private final Engine engine;
+
+    // miniJava.Compiler.compile of the class loader of each worker thread
+    private final ThreadLocal<Method> compilers = new ThreadLocal<Method>() {
+        @Override
+        protected Method initialValue() {
+            try {
+                Class<?> compiler = new IsolatingLoader(Runner.class.getClassLoader()).loadClass("miniJava.Compiler");
+                return compiler.getMethod("compile", String.class, PrintStream.class);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("miniJava.Compiler cannot be loaded", e);
+            }
+        }
+    };
+
+    Runner(int timeout, Engine engine) {
+        this.timeout = timeout;
+        this.engine = engine;
+    }
+
+    /**
+     * Compiles the test, and executes it if it is a pass test to be executed
+     */
+    void run(Test test) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream messages = new PrintStream(output, true);
+        try {
+            test.returnCode = compile(test.file, messages);
+            long remaining = timeout - (System.nanoTime() - start) / 1000000;
+            if (test.returnCode == 0 && test.execute && remaining > 0 && expect(test, messages))
+                execute(test, messages, (test.limit > 0) ? Math.min(test.limit, remaining) : remaining);
+        } finally {
+            synchronized (test) {
+                // unless the test has been abandoned
+                if (test.outcome == null) {
+                    test.nanos = System.nanoTime() - start;
+                    test.output = output.toString();
+                    judge(test);
+                }
+            }
+        }
+    }
+
+    private int compile(File file, PrintStream messages) {
+        try {
+            return (Integer) compilers.get().invoke(null, file.getPath(), messages);
+        } catch (InvocationTargetException e) {
+            messages.println("ERROR " + e.getCause());
+            return CRASHED;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the expectations of a pass test from its "//@" lines and its
+     * ".out" file
+     *
+     * @return false if they cannot be read
+     */
+    private static boolean expect(Test test, PrintStream messages) {
+        try {
+            for (String line : Files.readAllLines(test.file.toPath())) {
+                String[] words = line.trim().split("\\s+");
+                if (words.length != 3 || !words[0].equals("//@"))
+                    continue;
+                if (words[1].equals("status"))
+                    test.expectedStatus = Status.valueOf(words[2]);
+                else if (words[1].equals("limit"))
+                    test.limit = Long.parseLong(words[2]);
+                else
+                    throw new IllegalArgumentException("unknown directive " + words[1]);
+            }
+            File out = new File(test.file.getPath() + ".out");
+            if (out.isFile())
+                test.expectedOutput = normalize(new String(Files.readAllBytes(out.toPath())));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            messages.println("ERROR unable to read the expectations of " + test.name + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static String normalize(String output) {
+        return output.replaceAll("\\R", "\n");
+    }
+
+    private void execute(Test test, PrintStream messages, long timeLimit) {
+        String objectFileName = miniJava.Compiler.objectFileName(test.file.getPath());
+        byte[] objectCode;
+        try {
+            objectCode = Files.readAllBytes(new File(objectFileName).toPath());
+        } catch (IOException e) {
+            messages.println("ERROR unable to read " + objectFileName);
+            return;
+        }
+        Interpreter interpreter = new Interpreter();
+        if (interpreter.load(objectCode)) {
+            messages.println("ERROR invalid object code in " + objectFileName);
+            return;
+        }
+        if (engine == Engine.COMPILED)
+            interpreter.setCompiling(true);
+        else if (engine == Engine.TIERED)
+            interpreter.setTiering(TIERED_INVOCATIONS, TIERED_BACK_EDGES);
+        ByteArrayOutputStream run = new ByteArrayOutputStream();
+        PrintStream runMessages = new PrintStream(run, true);
+        interpreter.setInput(new InputSource(new ByteArrayInputStream(new byte[0])));
+        interpreter.setOutput(new OutputSink(runMessages));
+        interpreter.setConsole(runMessages);
+        interpreter.setTimeLimit(timeLimit);
+        Result result = interpreter.execute();
+        interpreter.showStatus();
+        test.runOutput = normalize(run.toString());
+        messages.print(run.toString());
+        test.status = result.getStatus();
+        int[] values = result.getValues();
+        if (values.length > 0)
+            test.value = values[0];
+    }
+
+    /**
+     * Sets the outcome of a finished test and its message, as the
+     * Checkpoint testers would print it
+     */
+    private void judge(Test test) {
+        if (test.nanos > timeout * 1000000L
+                || (test.status == Status.FAILED_TIME_LIMIT && test.expectedStatus != Status.FAILED_TIME_LIMIT)) {
+            test.outcome = Outcome.TIMEOUT;
+            test.message = test.name + " timed out after " + timeout + " ms!";
+        } else if (test.returnCode == CRASHED) {
+            test.outcome = Outcome.ERROR;
+            test.message = test.name + " crashed the compiler!";
+        } else if (!test.pass) {
+            boolean failed = test.returnCode == miniJava.Compiler.rc;
+            test.outcome = failed ? Outcome.PASSED : Outcome.FAILED;
+            test.message = test.name + (failed ? " failed successfully!" : " did not fail properly!");
+        } else if (test.returnCode != 0) {
+            test.outcome = Outcome.FAILED;
+            test.message = test.name + " failed to be processed!";
+        } else if (!test.execute) {
+            test.outcome = Outcome.PASSED;
+            test.message = test.name + " processed successfully!";
+        } else if (test.status == null) {
+            test.outcome = Outcome.ERROR;
+            test.message = test.name + " did not output correctly.";
+        } else {
+            int expected = -1;
+            try {
+                expected = Integer.parseInt(test.name.substring(5, 7));
+            } catch (RuntimeException e) {
+                // no expected value: the test cannot pass
+            }
+            if (test.value != expected || expected == -1) {
+                test.outcome = Outcome.FAILED;
+                test.message = test.name + " compiled but did not run successfully--got output " + test.value;
+            } else if (test.status != test.expectedStatus) {
+                test.outcome = Outcome.FAILED;
+                test.message = test.name + " ended with status " + test.status + " instead of "
+                        + test.expectedStatus;
+            } else if (test.expectedOutput != null && !test.expectedOutput.equals(test.runOutput)) {
+                test.outcome = Outcome.FAILED;
+                test.message = test.name + " did not produce the output in " + test.name + ".out";
+            } else {
+                test.outcome = Outcome.PASSED;
+                test.message = test.name + " ran successfully!";
+            }
+        }
+    }
+
+    /**
+     * Runs the tests on a work-stealing pool of the given number of threads,
+     * printing their results in order as they become available
+     */
+    void runAll(List<Test> tests, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        final long[] started = new long[tests.size()];
+        for (int i = 0; i < tests.size(); i++) {
+            final Test test = tests.get(i);
+            final int index = i;
+            futures.add(pool.submit(() -> {
+                started[index] = System.nanoTime();
+                run(test);
+            }));
+        }
+        for (int i = 0; i < tests.size(); i++) {
+            Test test = tests.get(i);
+            Future<?> future = futures.get(i);
+            while (true) {
+                try {
+                    future.get(100, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (ExecutionException e) {
+                    test.outcome = Outcome.ERROR;
+                    test.message = test.name + " could not be run: " + e.getCause();
+                    break;
+                } catch (TimeoutException e) {
+                    // Interpreted runs stop at their time limit; this only
+                    // abandons a compiler that does not terminate
+                    long begun = started[i];
+                    if (begun != 0 && System.nanoTime() - begun > (timeout + 1000) * 1000000L) {
+                        future.cancel(true);
+                        synchronized (test) {
+                            if (test.outcome == null) {
+                                test.outcome = Outcome.TIMEOUT;
+                                test.message = test.name + " timed out after " + timeout + " ms!";
+                                test.nanos = System.nanoTime() - begun;
+                            }
+                        }
+                        break;
+                    }
+                }
+            }
+            report(test);
+        }
+        pool.shutdownNow();
+    }
+
+    private static void report(Test test) {
+        for (String line : test.output.split("\\R")) {
+            if (line.startsWith("***") || line.startsWith("ERROR"))
+                System.out.println(line);
+        }
+        if (test.execute && test.status != null)
+            System.out.println("Result = " + test.value);
+        if (test.outcome == Outcome.PASSED)
+            System.out.println(test.message);
+        else
+            System.err.println(test.message);
+    }
+
+    // REPORTS
+
+    static String junitXml(List<Test> tests) {
+        StringBuilder s = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        s.append(String.format("<testsuites tests=\"%d\" failures=\"%d\" errors=\"%d\" time=\"%.3f\">%n",
+                tests.size(), count(tests, null, Outcome.FAILED, Outcome.TIMEOUT), count(tests, null, Outcome.ERROR),
+                seconds(tests, null)));
+        for (String suite : suites(tests)) {
+            s.append(String.format(
+                    "  <testsuite name=\"%s\" tests=\"%d\" failures=\"%d\" errors=\"%d\" time=\"%.3f\">%n",
+                    xml(suite), count(tests, suite), count(tests, suite, Outcome.FAILED, Outcome.TIMEOUT),
+                    count(tests, suite, Outcome.ERROR), seconds(tests, suite)));
+            for (Test test : tests) {
+                if (!test.suite.equals(suite))
+                    continue;
+                s.append(String.format("    <testcase classname=\"%s\" name=\"%s\" time=\"%.3f\">%n", xml(suite),
+                        xml(test.name), test.nanos / 1e9));
+                if (test.outcome == Outcome.FAILED || test.outcome == Outcome.TIMEOUT)
+                    s.append(String.format("      <failure message=\"%s\" type=\"%s\"/>%n", xml(test.message),
+                            test.outcome));
+                else if (test.outcome == Outcome.ERROR)
+                    s.append(String.format("      <error message=\"%s\"/>%n", xml(test.message)));
+                if (!test.output.isEmpty())
+                    s.append("      <system-out>").append(xml(test.output)).append("</system-out>\n");
+                s.append("    </testcase>\n");
+            }
+            s.append("  </testsuite>\n");
+        }
+        return s.append("</testsuites>\n").toString();
+    }
+
+    static String json(List<Test> tests) {
+        StringBuilder s = new StringBuilder("{\n");
+        s.append(String.format("  \"tests\": %d,%n  \"passed\": %d,%n  \"failures\": %d,%n", tests.size(),
+                count(tests, null, Outcome.PASSED), tests.size() - count(tests, null, Outcome.PASSED)));
+        s.append(String.format("  \"time\": %.3f,%n  \"results\": [", seconds(tests, null)));
+        for (int i = 0; i < tests.size(); i++) {
+            Test test = tests.get(i);
+            s.append((i == 0) ? "\n" : ",\n");
+            s.append(String.format(
+                    "    {\"suite\": %s, \"name\": %s, \"expect\": \"%s\", \"outcome\": \"%s\", \"returnCode\": %d, ",
+                    json(test.suite), json(test.name), test.pass ? "pass" : "fail",
+                    test.outcome.toString().toLowerCase(), test.returnCode));
+            if (test.execute)
+                s.append(String.format("\"value\": %d, \"status\": %s, ", test.value,
+                        (test.status == null) ? "null" : json(test.status.toString())));
+            s.append(String.format("\"time\": %.3f, \"message\": %s, \"output\": %s}", test.nanos / 1e9,
+                    json(test.message), json(test.output)));
+        }
+        return s.append("\n  ]\n}\n").toString();
+    }
+
+    private static List<String> suites(List<Test> tests) {
+        List<String> suites = new ArrayList<String>();
+        for (Test test : tests) {
+            if (!suites.contains(test.suite))
+                suites.add(test.suite);
+        }
+        return suites;
+    }
+
+    private static int count(List<Test> tests, String suite, Outcome... outcomes) {
+        int count = 0;
+        for (Test test : tests) {
+            if ((suite == null || test.suite.equals(suite))
+                    && (outcomes.length == 0 || Arrays.asList(outcomes).contains(test.outcome)))
+                count++;
+        }
+        return count;
+    }
+
+    private static double seconds(List<Test> tests, String suite) {
+        long nanos = 0;
+        for (Test test : tests) {
+            if (suite == null || test.suite.equals(suite))
+                nanos += test.nanos;
+        }
+        return nanos / 1e9;
+    }
+
+    private static String xml(String text) {
+        StringBuilder s = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            switch (c) {
+            case '<':
+                s.append("&lt;");
+                break;
+            case '>':
+                s.append("&gt;");
+                break;
+            case '&':
+                s.append("&amp;");
+                break;
+            case '"':
+                s.append("&quot;");
+                break;
+            default:
+                if (c < ' ' && c != '\n' && c != '\r' && c != '\t')
+                    s.append('?');
+                else
+                    s.append(c);
+            }
+        }
+        return s.toString();
+    }
+
+    private static String json(String text) {
+        StringBuilder s = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\')
+                s.append('\\').append(c);
+            else if (c == '\n')
+                s.append("\\n");
+            else if (c == '\r')
+                s.append("\\r");
+            else if (c == '\t')
+                s.append("\\t");
+            else if (c < ' ')
+                s.append(String.format("\\u%04x", (int) c));
+            else
+                s.append(c);
+        }
+        return s.append('"').toString();
+    }
+
+    /**
+     * Loads the classes of the miniJava and mJAM packages itself, so that
+     * their static fields are separate from those of other loaders; other
+     * classes come from the parent
+     */
+    static class IsolatingLoader extends ClassLoader {
+
+        IsolatingLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("miniJava.") && !name.startsWith("mJAM."))
+                return super.loadClass(name, resolve);
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        if (in == null)
+                            throw new ClassNotFoundException(name);
+                        byte[] bytes = in.readAllBytes();
+                        c = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                if (resolve)
+                    resolveClass(c);
+                return c;
+            }
+        }
+    }
+
+    // TEST DISCOVERY
+
+    static void addTests(List<Test> tests, File testDir, boolean execute) {
+        File[] files = testDir.listFiles();
+        if (files == null) {
+            System.err.println("No test directory " + testDir);
+            return;
+        }
+        Arrays.sort(files);
+        for (File x : files) {
+            String name = x.getName();
+            if (!x.isFile() || name.startsWith(".") || name.endsWith("out") || name.endsWith("mJAM")
+                    || name.endsWith("asm"))
+                continue;
+            tests.add(new Test(testDir.getName(), x, execute));
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors(), timeout = DEFAULT_TIMEOUT;
+        boolean execute = false;
+        Engine engine = Engine.INTERPRETED;
+        String xmlFileName = null, jsonFileName = null;
+        int arg = 0;
+        try {
+            for (; arg < args.length && args[arg].startsWith("-"); arg++) {
+                if (args[arg].equals("-threads") && arg + 1 < args.length)
+                    threads = Integer.parseInt(args[++arg]);
+                else if (args[arg].equals("-timeout") && arg + 1 < args.length)
+                    timeout = Integer.parseInt(args[++arg]);
+                else if (args[arg].equals("-execute"))
+                    execute = true;
+                else if (args[arg].equals("-jit"))
+                    engine = Engine.COMPILED;
+                else if (args[arg].equals("-tiered"))
+                    engine = Engine.TIERED;
+                else if (args[arg].equals("-xml") && arg + 1 < args.length)
+                    xmlFileName = args[++arg];
+                else if (args[arg].equals("-json") && arg + 1 < args.length)
+                    jsonFileName = args[++arg];
+                else
+                    throw new IllegalArgumentException("unknown option " + args[arg]);
+            }
+            if (threads < 1 || timeout < 1)
+                throw new IllegalArgumentException("threads and timeout must be positive");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("usage: java tester.Runner [-threads n] [-timeout millis] [-execute] [-jit | -tiered] "
+                    + "[-xml file] [-json file] [testDirectory ...]");
+            return;
+        }
+
+        List<Test> tests = new ArrayList<Test>();
+        if (arg == args.length) {
+            for (int pa = 1; pa <= 4; pa++) {
+                File testDir = new File(System.getProperty("java.class.path") + "/../tests/pa" + pa + "_tests");
+                if (testDir.isDirectory())
+                    addTests(tests, testDir, execute || pa == 4);
+            }
+        } else {
+            for (; arg < args.length; arg++)
+                addTests(tests, new File(args[arg]), execute);
+        }
+
+        long start = System.nanoTime();
+        new Runner(timeout, engine).runAll(tests, threads);
+        long elapsed = System.nanoTime() - start;
+
+        int failures = tests.size() - count(tests, null, Outcome.PASSED);
+        System.out.println(failures + " failures in all.");
+        System.out.println(String.format("%d tests in %.3f s on %d threads", tests.size(), elapsed / 1e9, threads));
+        if (xmlFileName != null) {
+            try (FileWriter xml = new FileWriter(xmlFileName)) {
+                xml.write(junitXml(tests));
+            }
+        }
+        if (jsonFileName != null) {
+            try (FileWriter json = new FileWriter(jsonFileName)) {
+                json.write(json(tests));
+            }
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * COMP 520
+ * A comment that is not closed before the end of the file
+ */
+class MainClass {
+    public static void main(String[] args) {
+        int x = 1;
+    }
+}
+/* not closed *
@@ -0,0 +1,9 @@
+/**
+ * COMP 520
+ * Identifiers of programs may not start with an underscore
+ */
+class MainClass {
+    public static void main(String[] args) {
+        int _x = 1;
+    }
+}
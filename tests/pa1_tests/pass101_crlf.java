@@ -0,0 +1,15 @@
+/**
+ * COMP 520
+ * Source with CRLF line endings, in comments and between tokens
+ */
+class MainClass {
+    // a single line comment ended by CRLF
+    public static void main(String[] args) {
+        int x = 1; /* a comment
+                      over CRLF lines */
+        int y =
+            x
+            + 2;
+        System.out.println(y);
+    }
+}
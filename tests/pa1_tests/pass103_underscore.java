@@ -0,0 +1,13 @@
+/**
+ * COMP 520
+ * Identifiers may contain underscores after their first character
+ */
+class MainClass {
+    int field_1;
+
+    public static void main(String[] args) {
+        int x_ = 1;
+        int a__b = x_ + 1;
+        System.out.println(a__b);
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * COMP 520
+ * Two fields of a class with the same name
+ */
+class MainClass {
+    public static void main(String[] args) {
+    }
+}
+
+class A {
+    int x;
+    boolean x;
+}
@@ -0,0 +1,12 @@
+/**
+ * COMP 520
+ * A local variable declared again in a nested block
+ */
+class MainClass {
+    public static void main(String[] args) {
+        int x = 1;
+        if (x > 0) {
+            int x = 2;
+        }
+    }
+}
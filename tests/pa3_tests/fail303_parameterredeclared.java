@@ -0,0 +1,13 @@
+/**
+ * COMP 520
+ * A local variable with the name of a parameter of its method
+ */
+class MainClass {
+    public static void main(String[] args) {
+    }
+
+    public int f(int x) {
+        int x = 2;
+        return x;
+    }
+}
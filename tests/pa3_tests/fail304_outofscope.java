@@ -0,0 +1,13 @@
+/**
+ * COMP 520
+ * A local variable used after the block that declares it
+ */
+class MainClass {
+    public static void main(String[] args) {
+        int y = 0;
+        if (y == 0) {
+            int x = 1;
+        }
+        y = x;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * COMP 520
+ * Names declared again after the scope of their previous declaration has
+ * ended, and local variables that shadow fields
+ */
+class MainClass {
+    int x;
+
+    public static void main(String[] args) {
+        int y = 0;
+        if (y == 0) {
+            int x = 1;
+            y = x;
+        }
+        while (y < 3) {
+            int x = y + 1;
+            y = x;
+        }
+        int x = y;
+    }
+
+    public int f(int y) {
+        int x = y;
+        return x;
+    }
+}
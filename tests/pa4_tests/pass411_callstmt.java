@@ -0,0 +1,34 @@
+/**
+ * COMP 520
+ * Instance method call statements with arguments, on this and on another
+ * object
+ */
+class MainClass {
+    public static void main(String[] args) {
+        Counter a = new Counter();
+        int i = 5;
+        a.inc(i);
+        a.add(3, 4);
+        a.twice(0);
+        System.out.println(a.n);
+    }
+}
+
+class Counter {
+    int n;
+
+    public void inc(int k) {
+        n = n + k;
+    }
+
+    public int add(int x, int y) {
+        n = n + x - y;
+        return n;
+    }
+
+    public void twice(int unused) {
+        inc(4);
+        add(5, 1);
+        this.inc(-1);
+    }
+}
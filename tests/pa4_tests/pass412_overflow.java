@@ -0,0 +1,18 @@
+/**
+ * COMP 520
+ * Multiplication overflow in a loop: the run fails with the same values,
+ * status and machine state in every engine
+ */
+//@ status FAILED_OVERFLOW
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(12);
+        int x = 1;
+        int i = 0;
+        while (i < 40) {
+            x = x * 2;
+            i = i + 1;
+        }
+        System.out.println(x);
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * COMP 520
+ * Division by zero once a loop counts its divisor down to 0
+ */
+//@ status FAILED_ZERO_DIVIDE
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(13);
+        int sum = 0;
+        int d = 20;
+        while (d >= 0) {
+            sum = sum + 1000 / d;
+            d = d - 1;
+        }
+        System.out.println(sum);
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * COMP 520
+ * Array store one past the end of the array, in a loop
+ */
+//@ status FAILED_ARRAY_INDEX
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(14);
+        int[] a = new int[25];
+        int i = 0;
+        while (i <= a.length) {
+            a[i] = i;
+            i = i + 1;
+        }
+        System.out.println(a[0]);
+    }
+}
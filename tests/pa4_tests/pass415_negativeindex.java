@@ -0,0 +1,18 @@
+/**
+ * COMP 520
+ * Array load at a negative index, in a loop
+ */
+//@ status FAILED_ARRAY_INDEX
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(15);
+        int[] a = new int[25];
+        int i = 24;
+        int sum = 0;
+        while (i < 100) {
+            sum = sum + a[i];
+            i = i - 1;
+        }
+        System.out.println(sum);
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * COMP 520
+ * Following the next field of the last node of a list, which is null
+ */
+//@ status FAILED_NULL_REF
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(16);
+        Node head = new Node();
+        int i = 0;
+        while (i < 30) {
+            Node n = new Node();
+            n.value = i;
+            n.next = head;
+            head = n;
+            i = i + 1;
+        }
+        int sum = 0;
+        while (i < 100) {
+            sum = sum + head.value;
+            head = head.next;
+        }
+        System.out.println(sum);
+    }
+}
+
+class Node {
+    int value;
+    Node next;
+}
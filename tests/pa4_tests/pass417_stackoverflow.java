@@ -0,0 +1,18 @@
+/**
+ * COMP 520
+ * Unbounded recursion, which exhausts the data store
+ */
+//@ status FAILED_DATA_STORE_FULL
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(17);
+        Recursion r = new Recursion();
+        System.out.println(r.down(1));
+    }
+}
+
+class Recursion {
+    public int down(int n) {
+        return this.down(n + 1) + 1;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * COMP 520
+ * Nested loops, loops that call methods, and recursion, which halt with the
+ * same values in every engine
+ */
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(18);
+
+        // nested loops
+        int sum = 0;
+        int i = 0;
+        while (i < 30) {
+            int j = 0;
+            while (j < i) {
+                if (j - (j / 3) * 3 == 0)
+                    sum = sum + j;
+                else
+                    sum = sum - 1;
+                j = j + 1;
+            }
+            i = i + 1;
+        }
+        System.out.println(sum);
+
+        // calls in a loop, static and on an object
+        Counter c = new Counter();
+        i = 0;
+        while (i < 50) {
+            c.add(square(i));
+            i = i + 1;
+        }
+        System.out.println(c.total);
+
+        // recursion
+        System.out.println(fib(15));
+
+        // loop over an array, with an early exit through its bound
+        int[] a = new int[40];
+        i = 0;
+        while (i < a.length) {
+            a[i] = 3 * i;
+            i = i + 1;
+        }
+        int found = a.length;
+        i = 0;
+        while (i < found) {
+            if (a[i] > 100)
+                found = i;
+            else
+                i = i + 1;
+        }
+        System.out.println(found);
+    }
+
+    public static int square(int x) {
+        return x * x;
+    }
+
+    public static int fib(int n) {
+        int result = n;
+        if (n > 1)
+            result = fib(n - 1) + fib(n - 2);
+        return result;
+    }
+}
+
+class Counter {
+    int total;
+
+    public void add(int x) {
+        total = total + x;
+    }
+}
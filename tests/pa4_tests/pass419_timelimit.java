@@ -0,0 +1,18 @@
+/**
+ * COMP 520
+ * A loop that never ends, which must be stopped at its time limit however it
+ * is executed
+ */
+//@ status FAILED_TIME_LIMIT
+//@ limit 500
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(19);
+        int x = 0;
+        int y = 0;
+        while (x < 1) {
+            y = 1 - y;
+        }
+        System.out.println(y);
+    }
+}
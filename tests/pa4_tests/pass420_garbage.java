@@ -0,0 +1,37 @@
+/**
+ * COMP 520
+ * Allocates many times the heap in short-lived arrays while a few nodes stay
+ * live, which only halts if the garbage is collected
+ */
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(20);
+        Node head = new Node();
+        head.value = 9;
+        int i = 0;
+        while (i < 20000) {
+            int[] a = new int[5];
+            a[4] = i;
+            if (i - (i / 4000) * 4000 == 0) {
+                Node n = new Node();
+                n.value = a[4] / 4000;
+                n.next = head;
+                head = n;
+            }
+            i = i + 1;
+        }
+        int sum = 0;
+        i = 0;
+        while (i < 6) {
+            sum = sum * 10 + head.value;
+            head = head.next;
+            i = i + 1;
+        }
+        System.out.println(sum);
+    }
+}
+
+class Node {
+    int value;
+    Node next;
+}
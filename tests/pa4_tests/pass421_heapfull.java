@@ -0,0 +1,26 @@
+/**
+ * COMP 520
+ * Keeps every node it allocates live, so the heap runs out however often it
+ * is collected
+ */
+//@ status FAILED_DATA_STORE_FULL
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(21);
+        Node head = new Node();
+        int i = 0;
+        while (i < 20000) {
+            Node n = new Node();
+            n.value = i;
+            n.next = head;
+            head = n;
+            i = i + 1;
+        }
+        System.out.println(head.value);
+    }
+}
+
+class Node {
+    int value;
+    Node next;
+}
@@ -0,0 +1,43 @@
+/**
+ * COMP 520
+ * Local variables that reuse the names of variables whose blocks have ended,
+ * and that shadow fields, each denote their own variable
+ */
+class MainClass {
+    public static void main(String[] args) {
+        System.out.println(22);
+        A a = new A();
+        a.x = 100;
+        System.out.println(a.f(5));
+        int y = 0;
+        if (y == 0) {
+            int x = 1;
+            y = y + x;
+        }
+        int i = 0;
+        while (i < 3) {
+            int x = 10;
+            y = y + x;
+            i = i + 1;
+        }
+        int x = 1000;
+        System.out.println(x + y);
+    }
+}
+
+class A {
+    int x;
+
+    public int f(int y) {
+        int r = x;
+        if (y > 0) {
+            int x = y;
+            r = r + x;
+        }
+        {
+            int x = 2 * y;
+            r = r + x;
+        }
+        return r + x;
+    }
+}